@@ -19,7 +19,7 @@ import com.formdev.flatlaf.FlatLightLaf;
 import com.formdev.flatlaf.util.SystemInfo;
 import eu.doppelhelix.app.bitwardenagent.impl.BitwardenClient;
 import eu.doppelhelix.app.bitwardenagent.impl.UtilUI;
-import eu.doppelhelix.app.bitwardenagent.server.UnixDomainSocketServer;
+import eu.doppelhelix.app.bitwardenagent.server.AbstractSocketServer;
 import java.awt.BorderLayout;
 import java.awt.Toolkit;
 import java.awt.event.WindowAdapter;
@@ -71,7 +71,7 @@ public class BitwardenMain {
 
         BitwardenClient bwClient = new BitwardenClient();
 
-        AtomicReference<UnixDomainSocketServer> udss = new AtomicReference<>();
+        AtomicReference<AbstractSocketServer> udss = new AtomicReference<>();
         AtomicReference<JCheckBoxMenuItem> enableServerReference = new AtomicReference<>();
 
         SwingUtilities.invokeLater(() -> {
@@ -190,13 +190,13 @@ public class BitwardenMain {
                 synchronized (udss) {
                     if (Configuration.getConfiguration().isStartUnixDomainSocketServer()) {
                         if(udss.get() == null) {
-                            UnixDomainSocketServer server = new UnixDomainSocketServer(bwClient);
+                            AbstractSocketServer server = AbstractSocketServer.create(bwClient);
                             server.start();
                             udss.set(server);
                         }
                     } else {
                         if(udss.get() != null) {
-                            UnixDomainSocketServer server = udss.get();
+                            AbstractSocketServer server = udss.get();
                             udss.set(null);
                             server.shutdown();
                         }
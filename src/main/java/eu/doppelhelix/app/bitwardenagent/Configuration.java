@@ -42,6 +42,12 @@ public class Configuration {
     public static final String PROP_AUTOMATIC_SYNC = "automaticSync";
     public static final String PROP_ALLOW_ALL_ACCESS = "allowAllAccess";
     public static final String PROP_ALLOW_ACCESS = "allowAccess";
+    public static final String PROP_SOCKET_MAX_CONNECTIONS = "socketMaxConnections";
+    public static final String PROP_SOCKET_READ_TIMEOUT = "socketReadTimeout";
+    public static final String PROP_SOCKET_IDLE_TIMEOUT = "socketIdleTimeout";
+    public static final String PROP_SOCKET_SELECTOR_SERVER = "socketSelectorServer";
+    public static final String PROP_SYNC_EQUIVALENT_DOMAINS = "syncEquivalentDomains";
+    public static final String PROP_COMPRESS_STATE = "compressState";
 
     public static Configuration getConfiguration() {
         return INSTANCE;
@@ -112,6 +118,110 @@ public class Configuration {
         }
     }
 
+    public void setSocketMaxConnections(int value) {
+        configData.put(PROP_SOCKET_MAX_CONNECTIONS, value);
+        writeConfig();
+        this.observer.forEach(co -> co.updatedValue(PROP_SOCKET_MAX_CONNECTIONS, value));
+    }
+
+    /**
+     * @return maximum number of connections handled concurrently by the unix
+     *         domain socket server, further connections are rejected
+     */
+    public int getSocketMaxConnections() {
+        return getInt(PROP_SOCKET_MAX_CONNECTIONS, 256);
+    }
+
+    public void setSocketReadTimeout(int value) {
+        configData.put(PROP_SOCKET_READ_TIMEOUT, value);
+        writeConfig();
+        this.observer.forEach(co -> co.updatedValue(PROP_SOCKET_READ_TIMEOUT, value));
+    }
+
+    /**
+     * @return time in milliseconds a client may take to send a complete query
+     */
+    public int getSocketReadTimeout() {
+        return getInt(PROP_SOCKET_READ_TIMEOUT, 5000);
+    }
+
+    public void setSocketIdleTimeout(int value) {
+        configData.put(PROP_SOCKET_IDLE_TIMEOUT, value);
+        writeConfig();
+        this.observer.forEach(co -> co.updatedValue(PROP_SOCKET_IDLE_TIMEOUT, value));
+    }
+
+    /**
+     * @return time in milliseconds a pipelined connection may stay open
+     *         without sending a query
+     */
+    public int getSocketIdleTimeout() {
+        return getInt(PROP_SOCKET_IDLE_TIMEOUT, 60000);
+    }
+
+    public void setSocketSelectorServer(boolean value) {
+        configData.put(PROP_SOCKET_SELECTOR_SERVER, value);
+        writeConfig();
+        this.observer.forEach(co -> co.updatedValue(PROP_SOCKET_SELECTOR_SERVER, value));
+    }
+
+    /**
+     * @return {@code true} if the socket server should multiplex all
+     *         connections on a single selector thread instead of using a
+     *         thread per connection
+     */
+    public boolean isSocketSelectorServer() {
+        try {
+            return (boolean) configData.getOrDefault(PROP_SOCKET_SELECTOR_SERVER, false);
+        } catch (ClassCastException ex) {
+            return false;
+        }
+    }
+
+    public void setSyncEquivalentDomains(boolean value) {
+        configData.put(PROP_SYNC_EQUIVALENT_DOMAINS, value);
+        writeConfig();
+        this.observer.forEach(co -> co.updatedValue(PROP_SYNC_EQUIVALENT_DOMAINS, value));
+    }
+
+    /**
+     * @return {@code true} if the equivalent domain rules should be fetched
+     *         on sync and used when matching URLs
+     */
+    public boolean isSyncEquivalentDomains() {
+        try {
+            return (boolean) configData.getOrDefault(PROP_SYNC_EQUIVALENT_DOMAINS, false);
+        } catch (ClassCastException ex) {
+            return false;
+        }
+    }
+
+    public void setCompressState(boolean value) {
+        configData.put(PROP_COMPRESS_STATE, value);
+        writeConfig();
+        this.observer.forEach(co -> co.updatedValue(PROP_COMPRESS_STATE, value));
+    }
+
+    /**
+     * @return {@code true} if the cached vault should be Deflate compressed
+     *         on disk
+     */
+    public boolean isCompressState() {
+        try {
+            return (boolean) configData.getOrDefault(PROP_COMPRESS_STATE, false);
+        } catch (ClassCastException ex) {
+            return false;
+        }
+    }
+
+    private int getInt(String property, int defaultValue) {
+        try {
+            return ((Number) configData.getOrDefault(property, defaultValue)).intValue();
+        } catch (ClassCastException ex) {
+            return defaultValue;
+        }
+    }
+
     public void addAllowAccess(String id) {
         Set<String> write = new HashSet<>(getAllowAccess());
         write.add(id);
@@ -266,7 +266,7 @@ public class PasswordListPanel extends javax.swing.JPanel {
                 },
                 (sd) -> {
                     if (sd != null) {
-                        cipherList = sd.getCiphers();
+                        cipherList = new ArrayList<>(sd.getCiphers());
                         cipherList.sort(Comparator.nullsFirst(Comparator.comparing(c -> c.getName())));
                     } else {
                         cipherList = List.of();
@@ -23,6 +23,7 @@ import eu.doppelhelix.app.bitwardenagent.impl.DecryptedCipherData;
 import eu.doppelhelix.app.bitwardenagent.impl.DecryptedFieldData;
 import eu.doppelhelix.app.bitwardenagent.impl.DecryptedPasswordHistoryEntry;
 import eu.doppelhelix.app.bitwardenagent.impl.DecryptedUriData;
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptionFailedException;
 import eu.doppelhelix.app.bitwardenagent.impl.LinkedIdListCellRenderer;
 import eu.doppelhelix.app.bitwardenagent.impl.TOTPUtil;
 import eu.doppelhelix.app.bitwardenagent.impl.UriMatchTypeListCellRenderer;
@@ -30,8 +31,12 @@ import java.awt.Component;
 import java.awt.Desktop;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.Frame;
 import java.awt.GridBagConstraints;
 import java.awt.Insets;
+import java.awt.Window;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.WindowStateListener;
 import java.io.IOException;
 import java.net.URI;
 import java.time.OffsetDateTime;
@@ -45,6 +50,7 @@ import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.Comparator;
+import java.util.function.Supplier;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
@@ -53,6 +59,7 @@ import javax.swing.JLabel;
 import javax.swing.JPasswordField;
 import javax.swing.JTextField;
 import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import javax.swing.text.JTextComponent;
 import org.kordamp.ikonli.materialdesign2.MaterialDesignC;
@@ -84,7 +91,12 @@ public class PasswordPanel extends javax.swing.JPanel {
     private static final System.Logger LOG = System.getLogger(PasswordPanel.class.getName());
 
     private final List<Component> additionalComponents = new ArrayList<>();
-    private final Timer totpTimer = new Timer(5000, ae -> updateTotpEvaluated());
+    // Single shot timer, rescheduled for each second of the countdown and
+    // for the end of the period
+    private final Timer totpTimer = new Timer(0, ae -> updateTotpCountdown());
+    private final WindowStateListener windowStateListener = we -> updateTotpTimer();
+    private Window observedWindow;
+    private long totpValidUntil;
     private char passwordMask;
     private Set<String> allowAccess = Collections.emptySet();
     private DecryptedCipherData decryptedCipherData;
@@ -158,6 +170,22 @@ public class PasswordPanel extends javax.swing.JPanel {
             }
         });
         allowAccess = new HashSet<>(Configuration.getConfiguration().getAllowAccess());
+        totpTimer.setRepeats(false);
+        addHierarchyListener(he -> {
+            if ((he.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                Window window = SwingUtilities.getWindowAncestor(this);
+                if (window != observedWindow) {
+                    if (observedWindow != null) {
+                        observedWindow.removeWindowStateListener(windowStateListener);
+                    }
+                    observedWindow = window;
+                    if (observedWindow != null) {
+                        observedWindow.addWindowStateListener(windowStateListener);
+                    }
+                }
+                updateTotpTimer();
+            }
+        });
         allowAccessCheckbox.addActionListener(ae -> {
             if (allowAccessCheckbox.isSelected()) {
                 Configuration.getConfiguration().addAllowAccess(decryptedCipherData.getId());
@@ -183,6 +211,7 @@ public class PasswordPanel extends javax.swing.JPanel {
         passwordField.setText("");
         totpField.setText("");
         totpEvaluatedField.setText("");
+        totpCountdownLabel.setText("");
         sshPrivateKeyField.setText("");
         sshPublicKeyField.setText("");
         sshFingerprintField.setText("");
@@ -214,37 +243,37 @@ public class PasswordPanel extends javax.swing.JPanel {
                 label.setFont(label.getFont().deriveFont(Font.ITALIC));
                 locationInfoWrapper.add(label);
             }
-            notesField.setText(decryptedCipherData.getNotes());
+            notesField.setText(decrypted(() -> decryptedCipherData.getNotes()));
             notesField.setCaretPosition(0);
             if(decryptedCipherData.getLogin() != null) {
                 showLoginFields(true);
                 usernameField.setText(decryptedCipherData.getLogin().getUsername());
                 usernameField.setCaretPosition(0);
-                passwordField.setText(decryptedCipherData.getLogin().getPassword());
+                passwordField.setText(decrypted(() -> decryptedCipherData.getLogin().getPassword()));
                 passwordField.setCaretPosition(0);
-                totpField.setText(decryptedCipherData.getLogin().getTotp());
+                totpField.setText(decrypted(() -> decryptedCipherData.getLogin().getTotp()));
                 totpField.setCaretPosition(0);
                 if(isNotNullNotEmpty(decryptedCipherData.getLogin().getUsername())) {
                     copyUsernameButton.setEnabled(true);
                 }
-                if(isNotNullNotEmpty(decryptedCipherData.getLogin().getPassword())) {
+                if(isNotNullNotEmpty(decrypted(() -> decryptedCipherData.getLogin().getPassword()))) {
                     copyPasswordButton.setEnabled(true);
                 }
-                if(isNotNullNotEmpty(decryptedCipherData.getLogin().getTotp())) {
+                if(isNotNullNotEmpty(decrypted(() -> decryptedCipherData.getLogin().getTotp()))) {
                     copyTotpButton.setEnabled(true);
                 }
             } else if (decryptedCipherData.getSshKey() != null) {
                 showSshFields(true);
-                sshPrivateKeyField.setText(decryptedCipherData.getSshKey().getPrivateKey());
+                sshPrivateKeyField.setText(decrypted(() -> decryptedCipherData.getSshKey().getPrivateKey()));
                 sshPrivateKeyField.setCaretPosition(0);
-                sshPublicKeyField.setText(decryptedCipherData.getSshKey().getPublicKey());
+                sshPublicKeyField.setText(decrypted(() -> decryptedCipherData.getSshKey().getPublicKey()));
                 sshPublicKeyField.setCaretPosition(0);
                 sshFingerprintField.setText(decryptedCipherData.getSshKey().getKeyFingerprint());
                 sshFingerprintField.setCaretPosition(0);
-                if(isNotNullNotEmpty(decryptedCipherData.getSshKey().getPrivateKey())) {
+                if(isNotNullNotEmpty(decrypted(() -> decryptedCipherData.getSshKey().getPrivateKey()))) {
                     copySshPrivateKey.setEnabled(true);
                 }
-                if(isNotNullNotEmpty(decryptedCipherData.getSshKey().getPublicKey())) {
+                if(isNotNullNotEmpty(decrypted(() -> decryptedCipherData.getSshKey().getPublicKey()))) {
                     copySshPublicKey.setEnabled(true);
                 }
                 if(isNotNullNotEmpty(decryptedCipherData.getSshKey().getKeyFingerprint())) {
@@ -350,7 +379,7 @@ public class PasswordPanel extends javax.swing.JPanel {
                     JTextField textField = new JTextField();
                     textField.setColumns(25);
                     textField.setEditable(false);
-                    textField.setText(dfd.getValue());
+                    textField.setText(decrypted(() -> dfd.getValue()));
                     JButton copyButton = buildCopyButton(textField);
                     additionalComponents.add(textField);
                     additionalComponents.add(copyButton);
@@ -360,7 +389,7 @@ public class PasswordPanel extends javax.swing.JPanel {
                     JPasswordField passwordField = new JPasswordField();
                     passwordField.setColumns(25);
                     passwordField.setEditable(false);
-                    passwordField.setText(dfd.getValue());
+                    passwordField.setText(decrypted(() -> dfd.getValue()));
                     JButton copyButton = buildCopyButton(passwordField);
                     JToggleButton toggleVisibilityButton = new JToggleButton();
                     toggleVisibilityButton.setIcon(CLOSED_EYE_ICON);
@@ -380,7 +409,7 @@ public class PasswordPanel extends javax.swing.JPanel {
                 } else if (dfd.getType() == FieldType.CHECKBOX) {
                     JCheckBox checkbox = new JCheckBox();
                     checkbox.setEnabled(false);
-                    checkbox.setSelected(Boolean.parseBoolean(dfd.getValue()));
+                    checkbox.setSelected(Boolean.parseBoolean(decrypted(() -> dfd.getValue())));
                     additionalComponents.add(checkbox);
                     passwordPanel.add(checkbox, new GridBagConstraints(1, componentRow, 2, 1, 1, 0, BASELINE_LEADING, GridBagConstraints.HORIZONTAL, defaultInsets, 0, 0));
                 } else if (dfd.getType() == FieldType.LINKED) {
@@ -437,7 +466,7 @@ public class PasswordPanel extends javax.swing.JPanel {
                 JPasswordField passwordField = new JPasswordField();
                 passwordField.setColumns(25);
                 passwordField.setEditable(false);
-                passwordField.setText(dphe.getPassword());
+                passwordField.setText(decrypted(() -> dphe.getPassword()));
                 JButton copyButton = buildCopyButton(passwordField);
                 JToggleButton toggleVisibilityButton = new JToggleButton();
                 toggleVisibilityButton.setIcon(CLOSED_EYE_ICON);
@@ -499,6 +528,7 @@ public class PasswordPanel extends javax.swing.JPanel {
         totpVisibleButton.setVisible(state);
         totpEvaluatedField.setVisible(state);
         copyTotpEvaluatedButton.setVisible(state);
+        totpCountdownLabel.setVisible(state);
     }
 
     public void showSshFields(boolean state) {
@@ -591,23 +621,79 @@ public class PasswordPanel extends javax.swing.JPanel {
         copyIdentityCountry.setVisible(state);
     }
 
+    /**
+     * Secrets that can not be decrypted are shown as empty, the failure is
+     * already logged when the value is first accessed.
+     */
+    private static String decrypted(Supplier<String> secret) {
+        try {
+            return secret.get();
+        } catch (DecryptionFailedException ex) {
+            return null;
+        }
+    }
+
     private void updateTotpEvaluated() {
-        String code = null;
+        TOTPUtil.TOTPToken token = null;
         try {
-            code = TOTPUtil.calculateTOTP(totpField.getText());
+            token = TOTPUtil.calculateTOTPToken(totpField.getText());
         } catch (Exception ex) {
         }
-        if(code != null) {
-            totpTimer.start();
-            totpEvaluatedField.setText(code);
+        if(token != null) {
+            totpValidUntil = token.validUntil();
+            totpEvaluatedField.setText(token.value());
             copyTotpEvaluatedButton.setEnabled(true);
+            updateTotpCountdown();
         } else {
             totpTimer.stop();
+            totpValidUntil = 0;
             totpEvaluatedField.setText("");
+            totpCountdownLabel.setText("");
             copyTotpEvaluatedButton.setEnabled(false);
         }
     }
 
+    /**
+     * Update the countdown, the token is only calculated again once the
+     * period ended.
+     */
+    private void updateTotpCountdown() {
+        if (totpValidUntil == 0) {
+            return;
+        }
+        long remaining = totpValidUntil - System.currentTimeMillis();
+        if (remaining <= 0) {
+            updateTotpEvaluated();
+            return;
+        }
+        totpCountdownLabel.setText(Math.ceilDiv(remaining, 1000L) + "s");
+        if (isTotpVisible()) {
+            // Tick on the full seconds before the end of the period, so that
+            // the last tick is exactly at the end of the period
+            totpTimer.setInitialDelay((int) ((remaining - 1) % 1000) + 1);
+            totpTimer.restart();
+        } else {
+            totpTimer.stop();
+        }
+    }
+
+    private boolean isTotpVisible() {
+        Window window = SwingUtilities.getWindowAncestor(this);
+        boolean iconified = window instanceof Frame frame
+                && (frame.getExtendedState() & Frame.ICONIFIED) != 0;
+        return isShowing() && !iconified;
+    }
+
+    private void updateTotpTimer() {
+        if (isTotpVisible()) {
+            if (!totpTimer.isRunning()) {
+                updateTotpCountdown();
+            }
+        } else {
+            totpTimer.stop();
+        }
+    }
+
     private void updateAllowAccessCheckbox() {
         if(Configuration.getConfiguration().isAllowAllAccess()) {
             allowAccessCheckbox.setEnabled(false);
@@ -658,6 +744,7 @@ public class PasswordPanel extends javax.swing.JPanel {
         copyTotpButton = new javax.swing.JButton();
         totpVisibleButton = new javax.swing.JToggleButton();
         copyTotpEvaluatedButton = new javax.swing.JButton();
+        totpCountdownLabel = new javax.swing.JLabel();
         sshPrivateKeyLabel = new javax.swing.JLabel();
         sshPublicKeyLabel = new javax.swing.JLabel();
         sshFingerprintLabel = new javax.swing.JLabel();
@@ -969,6 +1056,14 @@ public class PasswordPanel extends javax.swing.JPanel {
         gridBagConstraints.insets = new java.awt.Insets(5, 5, 5, 5);
         passwordPanel.add(copyTotpEvaluatedButton, gridBagConstraints);
 
+        totpCountdownLabel.setText("30s");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 4;
+        gridBagConstraints.gridy = 7;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.BASELINE_LEADING;
+        gridBagConstraints.insets = new java.awt.Insets(5, 5, 5, 5);
+        passwordPanel.add(totpCountdownLabel, gridBagConstraints);
+
         sshPrivateKeyLabel.setText(bundle.getString("sshPrivateKeyLabel")); // NOI18N
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 0;
@@ -1978,6 +2073,7 @@ public class PasswordPanel extends javax.swing.JPanel {
     private javax.swing.JScrollPane sshPrivateKeyScrollPane;
     private javax.swing.JTextField sshPublicKeyField;
     private javax.swing.JLabel sshPublicKeyLabel;
+    private javax.swing.JLabel totpCountdownLabel;
     private javax.swing.JTextField totpEvaluatedField;
     private javax.swing.JPasswordField totpField;
     private javax.swing.JLabel totpLabel;
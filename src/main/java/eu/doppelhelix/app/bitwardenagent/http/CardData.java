@@ -16,12 +16,12 @@
 package eu.doppelhelix.app.bitwardenagent.http;
 
 public record CardData(
-        String cardholderName,
-        String brand,
-        String number,
-        String expMonth,
-        String expYear,
-        String code
+        EncString cardholderName,
+        EncString brand,
+        EncString number,
+        EncString expMonth,
+        EncString expYear,
+        EncString code
         ) {
 
 }
@@ -23,10 +23,10 @@ import java.util.List;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record CipherData(
         String id,
-        String name,
+        EncString name,
         String organizationId,
         @JsonProperty("notes")
-        String notes,
+        EncString notes,
         LoginData login,
         @JsonProperty("sshKey")
         SshKey sshKey,
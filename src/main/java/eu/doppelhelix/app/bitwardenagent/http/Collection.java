@@ -24,7 +24,7 @@ public record Collection (
         boolean manage,
         String id,
         String organizationId,
-        String name
+        EncString name
     ) {
 
 }
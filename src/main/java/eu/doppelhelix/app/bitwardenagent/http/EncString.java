@@ -0,0 +1,181 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.http;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encrypted value in the bitwarden wire format
+ * {@code <encryptionType>.<part>|<part>|...}.
+ *
+ * <p>The parts are decoded once when the value is parsed, so decryption does
+ * not need to split and decode the string again. Parts, that are not present
+ * for the encryption type, are {@code null}.</p>
+ *
+ * <ul>
+ * <li>{@code 0}: AES-CBC-256 ({@code iv|data})</li>
+ * <li>{@code 2}: AES-CBC-256 with HMAC-SHA256 ({@code iv|data|mac})</li>
+ * <li>{@code 3}, {@code 4}: RSA-OAEP ({@code data})</li>
+ * <li>{@code 5}, {@code 6}: RSA-OAEP with HMAC-SHA256 ({@code data|mac})</li>
+ * </ul>
+ *
+ * <p>Values read from JSON, that can not be parsed (e.g. an encryption type
+ * introduced by a newer server), are kept as {@link #TYPE_INVALID} with the
+ * raw value as data. They fail when they are decrypted, so only the entry
+ * holding them is affected.</p>
+ */
+public record EncString(int encryptionType, byte[] iv, byte[] data, byte[] mac) {
+
+    public static final int TYPE_AES_CBC_256_B64 = 0;
+    public static final int TYPE_AES_CBC_256_HMAC_SHA256_B64 = 2;
+    public static final int TYPE_RSA2048_OAEP_SHA256_B64 = 3;
+    public static final int TYPE_RSA2048_OAEP_SHA1_B64 = 4;
+    public static final int TYPE_RSA2048_OAEP_SHA256_HMAC_SHA256_B64 = 5;
+    public static final int TYPE_RSA2048_OAEP_SHA1_HMAC_SHA256_B64 = 6;
+    public static final int TYPE_INVALID = -1;
+
+    /**
+     * Parse a value, values that can not be parsed are kept as
+     * {@link #TYPE_INVALID}.
+     */
+    @JsonCreator
+    public static EncString parseLenient(String input) {
+        try {
+            return parse(input);
+        } catch (IllegalArgumentException ex) {
+            return new EncString(TYPE_INVALID, null, input.getBytes(UTF_8), null);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value can not be parsed
+     */
+    public static EncString parse(String input) {
+        if (input == null) {
+            return null;
+        }
+        int typeSeparator = input.indexOf('.');
+        if (typeSeparator < 1) {
+            throw new IllegalArgumentException("Missing encryption type");
+        }
+        int encryptionType;
+        try {
+            encryptionType = Integer.parseInt(input, 0, typeSeparator, 10);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid encryption type", ex);
+        }
+        byte[][] parts = new byte[3][];
+        int partCount = 0;
+        int start = typeSeparator + 1;
+        while (start <= input.length()) {
+            int end = input.indexOf('|', start);
+            if (end < 0) {
+                end = input.length();
+            }
+            if (partCount == parts.length) {
+                throw new IllegalArgumentException("Too many parts");
+            }
+            parts[partCount++] = Base64.getDecoder().decode(input.substring(start, end));
+            start = end + 1;
+        }
+        return switch (encryptionType) {
+            case TYPE_AES_CBC_256_B64 -> {
+                checkPartCount(encryptionType, partCount, 2);
+                yield new EncString(encryptionType, parts[0], parts[1], null);
+            }
+            case TYPE_AES_CBC_256_HMAC_SHA256_B64 -> {
+                checkPartCount(encryptionType, partCount, 3);
+                yield new EncString(encryptionType, parts[0], parts[1], parts[2]);
+            }
+            case TYPE_RSA2048_OAEP_SHA256_B64, TYPE_RSA2048_OAEP_SHA1_B64 -> {
+                checkPartCount(encryptionType, partCount, 1);
+                yield new EncString(encryptionType, null, parts[0], null);
+            }
+            case TYPE_RSA2048_OAEP_SHA256_HMAC_SHA256_B64, TYPE_RSA2048_OAEP_SHA1_HMAC_SHA256_B64 -> {
+                checkPartCount(encryptionType, partCount, 2);
+                yield new EncString(encryptionType, null, parts[0], parts[1]);
+            }
+            default -> throw new IllegalArgumentException("Unsupported encryption type: " + encryptionType);
+        };
+    }
+
+    private static void checkPartCount(int encryptionType, int partCount, int expectedPartCount) {
+        if (partCount != expectedPartCount) {
+            throw new IllegalArgumentException(String.format(
+                    "Encryption type %d requires %d parts, found %d",
+                    encryptionType,
+                    expectedPartCount,
+                    partCount));
+        }
+    }
+
+    public boolean isValid() {
+        return encryptionType != TYPE_INVALID;
+    }
+
+    @JsonValue
+    public String toEncodedString() {
+        if (!isValid()) {
+            return new String(data, UTF_8);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(encryptionType);
+        sb.append('.');
+        boolean first = true;
+        for (byte[] part : new byte[][]{iv, data, mac}) {
+            if (part == null) {
+                continue;
+            }
+            if (!first) {
+                sb.append('|');
+            }
+            sb.append(Base64.getEncoder().encodeToString(part));
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return obj instanceof EncString other
+                && encryptionType == other.encryptionType
+                && Arrays.equals(iv, other.iv)
+                && Arrays.equals(data, other.data)
+                && Arrays.equals(mac, other.mac);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = encryptionType;
+        hash = 31 * hash + Arrays.hashCode(iv);
+        hash = 31 * hash + Arrays.hashCode(data);
+        hash = 31 * hash + Arrays.hashCode(mac);
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "EncString{" + "encryptionType=" + encryptionType + ", length=" + (data != null ? data.length : 0) + '}';
+    }
+}
@@ -20,8 +20,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record FieldData(
         FieldType type,
-        String name,
-        String value,
+        EncString name,
+        EncString value,
         LinkedId linkedId
         ) {
 
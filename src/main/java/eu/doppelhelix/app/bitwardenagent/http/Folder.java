@@ -21,7 +21,7 @@ import java.time.OffsetDateTime;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record Folder (
         String id,
-        String name,
+        EncString name,
         OffsetDateTime revisionDate
     ) {
 
@@ -16,24 +16,24 @@
 package eu.doppelhelix.app.bitwardenagent.http;
 
 public record IdentityData(
-        String title,
-        String firstName,
-        String middleName,
-        String lastName,
-        String address1,
-        String address2,
-        String address3,
-        String city,
-        String state,
-        String postalCode,
-        String country,
-        String company,
-        String email,
-        String phone,
-        String ssn,
-        String username,
-        String passportNumber,
-        String licenseNumber
+        EncString title,
+        EncString firstName,
+        EncString middleName,
+        EncString lastName,
+        EncString address1,
+        EncString address2,
+        EncString address3,
+        EncString city,
+        EncString state,
+        EncString postalCode,
+        EncString country,
+        EncString company,
+        EncString email,
+        EncString phone,
+        EncString ssn,
+        EncString username,
+        EncString passportNumber,
+        EncString licenseNumber
         ) {
 
 }
@@ -20,10 +20,10 @@ import java.util.List;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record LoginData(
-        String uri,
-        String username,
-        String password,
-        String totp,
+        EncString uri,
+        EncString username,
+        EncString password,
+        EncString totp,
         List<UriData> uris
         ) {
 
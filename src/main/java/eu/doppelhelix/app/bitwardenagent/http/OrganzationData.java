@@ -20,7 +20,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record OrganzationData(
         String id,
-        String key,
+        EncString key,
         String name
         ) {
 
@@ -19,7 +19,7 @@ import java.time.OffsetDateTime;
 
 public record PasswordHistoryEntry
     (
-        String password,
+        EncString password,
         OffsetDateTime lastUsedDate
     ) {
 
@@ -23,8 +23,8 @@ public record ProfileData(
         String id,
         String email,
         String name,
-        String key,
-        String privateKey,
+        EncString key,
+        EncString privateKey,
         List<OrganzationData> organizations
         ) {
 
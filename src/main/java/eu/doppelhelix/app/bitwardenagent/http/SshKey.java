@@ -19,9 +19,9 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public record SshKey(
-        String privateKey,
-        String publicKey,
-        String keyFingerprint
+        EncString privateKey,
+        EncString publicKey,
+        EncString keyFingerprint
         ) {
 
 }
@@ -23,7 +23,8 @@ public record SyncData(
         ProfileData profile,
         List<CipherData> ciphers,
         List<Folder> folders,
-        List<Collection> collections
+        List<Collection> collections,
+        DomainsData domains
 ) {
 
 }
@@ -18,4 +18,4 @@ package eu.doppelhelix.app.bitwardenagent.http;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
-public record UriData (String uri, String uriChecksum, UriMatchType match) {}
+public record UriData (EncString uri, EncString uriChecksum, UriMatchType match) {}
@@ -0,0 +1,591 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
+import eu.doppelhelix.app.bitwardenagent.http.PreloginResult;
+import eu.doppelhelix.app.bitwardenagent.http.SyncData;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.System.Logger.Level;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Binary format of the {@link ClientState}.
+ *
+ * <p>The file starts with the magic {@code BWAS}, the format version and a
+ * flags byte. If {@link #FLAG_DEFLATE} is set, the rest of the file is
+ * Deflate compressed. The body starts with a table of all strings, followed
+ * by the state itself. Values are tagged, records are written as a reference
+ * to their schema (the names of their components, defined on first use)
+ * followed by the component values. Encrypted strings are stored as raw
+ * iv, data and mac bytes instead of their Base64 form.</p>
+ *
+ * <p>Components are matched by name when reading, so components, that were
+ * added to or removed from a record, do not break existing files. Values,
+ * that do not fit the current type of their component, are skipped and
+ * unknown enum constants are read as {@code null}.</p>
+ */
+final class BinaryStateFormat {
+
+    private static final System.Logger LOG = System.getLogger(BinaryStateFormat.class.getName());
+
+    static final int VERSION = 1;
+    static final int FLAG_DEFLATE = 1;
+
+    private static final byte[] MAGIC = {'B', 'W', 'A', 'S'};
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_STRING = 4;
+    private static final int TAG_TIMESTAMP = 5;
+    private static final int TAG_ENC_STRING = 6;
+    private static final int TAG_LIST = 7;
+    private static final int TAG_RECORD = 8;
+
+    private static final ClassValue<RecordInfo> RECORD_INFO = new ClassValue<>() {
+        @Override
+        protected RecordInfo computeValue(Class<?> type) {
+            return new RecordInfo(type);
+        }
+    };
+
+    private BinaryStateFormat() {
+    }
+
+    /**
+     * @return {@code true} if the data starts with the magic of this format
+     */
+    static boolean isBinaryState(byte[] start) {
+        return start.length >= MAGIC.length && Arrays.equals(start, 0, MAGIC.length, MAGIC, 0, MAGIC.length);
+    }
+
+    static void write(ClientState state, OutputStream output, boolean compress) throws IOException {
+        Writer writer = new Writer();
+        writer.writeValue(StoredState.of(state));
+
+        output.write(MAGIC);
+        output.write(VERSION);
+        output.write(compress ? FLAG_DEFLATE : 0);
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            DeflaterOutputStream deflaterOutput = compress ? new DeflaterOutputStream(output, deflater, 64 * 1024) : null;
+            DataOutputStream body = new DataOutputStream(new BufferedOutputStream(compress ? deflaterOutput : output, 64 * 1024));
+            writeVarInt(body, writer.strings.size());
+            for (String string : writer.strings) {
+                byte[] data = string.getBytes(UTF_8);
+                writeVarInt(body, data.length);
+                body.write(data);
+            }
+            writer.valueBuffer.writeTo(body);
+            body.flush();
+            if (deflaterOutput != null) {
+                deflaterOutput.finish();
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    static ClientState read(InputStream input) throws IOException {
+        DataInputStream header = new DataInputStream(input);
+        byte[] magic = new byte[MAGIC.length];
+        header.readFully(magic);
+        if (!isBinaryState(magic)) {
+            throw new IOException("Not a binary state file");
+        }
+        int version = header.readUnsignedByte();
+        if (version > VERSION) {
+            throw new IOException("Unsupported state file version: " + version);
+        }
+        boolean compressed = (header.readUnsignedByte() & FLAG_DEFLATE) != 0;
+        Inflater inflater = compressed ? new Inflater() : null;
+        try {
+            InputStream bodyInput = compressed ? new InflaterInputStream(input, inflater, 64 * 1024) : input;
+            Reader reader = new Reader(bodyInput);
+            StoredState storedState = (StoredState) reader.readValue(StoredState.class);
+            return storedState == null ? null : storedState.toClientState();
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new IOException("Invalid state file", ex);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Map<Class<?>, Integer> schemaIndex = new HashMap<>();
+        private final ByteArrayOutputStream valueBuffer = new ByteArrayOutputStream(64 * 1024);
+        private final DataOutputStream values = new DataOutputStream(valueBuffer);
+
+        void writeValue(Object value) throws IOException {
+            switch (value) {
+                case null -> values.writeByte(TAG_NULL);
+                case Boolean b -> values.writeByte(b ? TAG_TRUE : TAG_FALSE);
+                case Integer i -> writeInteger(i);
+                case Long l -> writeInteger(l);
+                case String s -> writeString(s);
+                case UUID uuid -> writeString(uuid.toString());
+                case URI uri -> writeString(uri.toString());
+                case Enum<?> e -> writeString(e.name());
+                case OffsetDateTime odt -> {
+                    values.writeByte(TAG_TIMESTAMP);
+                    writeVarInt(values, zigZag(odt.toEpochSecond()));
+                    writeVarInt(values, odt.getNano());
+                    writeVarInt(values, zigZag(odt.getOffset().getTotalSeconds()));
+                }
+                case EncString es -> {
+                    values.writeByte(TAG_ENC_STRING);
+                    values.writeByte(es.encryptionType());
+                    writeBytes(es.iv());
+                    writeBytes(es.data());
+                    writeBytes(es.mac());
+                }
+                case List<?> list -> {
+                    values.writeByte(TAG_LIST);
+                    writeVarInt(values, list.size());
+                    for (Object element : list) {
+                        writeValue(element);
+                    }
+                }
+                case Record r -> writeRecord(r);
+                default -> throw new IOException("Unsupported type: " + value.getClass().getName());
+            }
+        }
+
+        private void writeInteger(long value) throws IOException {
+            values.writeByte(TAG_INTEGER);
+            writeVarInt(values, zigZag(value));
+        }
+
+        private void writeString(String value) throws IOException {
+            values.writeByte(TAG_STRING);
+            writeVarInt(values, intern(value));
+        }
+
+        private int intern(String value) {
+            Integer index = stringIndex.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.add(value);
+                stringIndex.put(value, index);
+            }
+            return index;
+        }
+
+        private void writeBytes(byte[] data) throws IOException {
+            if (data == null) {
+                writeVarInt(values, 0);
+            } else {
+                writeVarInt(values, data.length + 1L);
+                values.write(data);
+            }
+        }
+
+        private void writeRecord(Record value) throws IOException {
+            RecordInfo info = RECORD_INFO.get(value.getClass());
+            values.writeByte(TAG_RECORD);
+            Integer schema = schemaIndex.get(value.getClass());
+            if (schema == null) {
+                // A new schema is defined where it is used first
+                schema = schemaIndex.size();
+                schemaIndex.put(value.getClass(), schema);
+                writeVarInt(values, schema);
+                writeVarInt(values, info.names.length);
+                for (String name : info.names) {
+                    writeVarInt(values, intern(name));
+                }
+            } else {
+                writeVarInt(values, schema);
+            }
+            try {
+                for (Method accessor : info.accessors) {
+                    writeValue(accessor.invoke(value));
+                }
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Parses the body through a bounded buffer. Reading byte by byte from the
+     * stream costs more than the parsing itself, reading the whole body into
+     * memory would hold the file twice for large vaults.
+     */
+    private static final class Reader {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final InputStream stream;
+        private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+        private final String[] strings;
+        private final List<String[]> schemas = new ArrayList<>();
+        private final List<int[]> componentMappings = new ArrayList<>();
+
+        Reader(InputStream stream) throws IOException {
+            this.stream = stream;
+            int count = readVarInt();
+            List<String> stringList = new ArrayList<>(Math.min(count, 1024));
+            for (int i = 0; i < count; i++) {
+                stringList.add(new String(readData(readVarInt()), UTF_8));
+            }
+            strings = stringList.toArray(String[]::new);
+        }
+
+        /**
+         * Make sure, that at least {@code count} bytes are buffered.
+         * {@code count} must not exceed the size of the buffer.
+         */
+        private void fill(int count) throws IOException {
+            if (input.remaining() >= count) {
+                return;
+            }
+            input.compact();
+            try {
+                while (input.position() < count) {
+                    int read = stream.read(input.array(), input.position(), input.remaining());
+                    if (read < 0) {
+                        throw new EOFException("Unexpected end of state file");
+                    }
+                    input.position(input.position() + read);
+                }
+            } finally {
+                input.flip();
+            }
+        }
+
+        private int readByte() throws IOException {
+            fill(1);
+            return input.get() & 0xFF;
+        }
+
+        private byte[] readData(int length) throws IOException {
+            if (length <= BUFFER_SIZE) {
+                fill(length);
+                byte[] data = new byte[length];
+                input.get(data);
+                return data;
+            }
+            // Larger than the buffer, readNBytes only grows the result with
+            // the data actually read, so a corrupt length fails at the end of
+            // the file instead of allocating the claimed length up front
+            byte[] buffered = new byte[input.remaining()];
+            input.get(buffered);
+            byte[] rest = stream.readNBytes(length - buffered.length);
+            if (rest.length < length - buffered.length) {
+                throw new EOFException("Unexpected end of state file");
+            }
+            byte[] data = Arrays.copyOf(buffered, length);
+            System.arraycopy(rest, 0, data, buffered.length, rest.length);
+            return data;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Invalid variable length integer");
+        }
+
+        private int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Invalid length: " + value);
+            }
+            return (int) value;
+        }
+
+        /**
+         * @param type declared type of the value, used to convert strings,
+         *             integers and records
+         */
+        Object readValue(Type type) throws IOException, ReflectiveOperationException {
+            Class<?> rawType = rawType(type);
+            int tag = readByte();
+            return switch (tag) {
+                case TAG_NULL -> null;
+                case TAG_FALSE -> false;
+                case TAG_TRUE -> true;
+                case TAG_INTEGER -> {
+                    long value = unZigZag(readVarLong());
+                    boolean intType = rawType == int.class || rawType == Integer.class;
+                    yield intType && value == (int) value ? (Object) (int) value : (Object) value;
+                }
+                case TAG_STRING -> convertString(readString(), rawType);
+                case TAG_TIMESTAMP -> {
+                    long epochSecond = unZigZag(readVarLong());
+                    int nano = readVarInt();
+                    ZoneOffset offset = ZoneOffset.ofTotalSeconds((int) unZigZag(readVarLong()));
+                    yield OffsetDateTime.of(LocalDateTime.ofEpochSecond(epochSecond, nano, offset), offset);
+                }
+                case TAG_ENC_STRING -> new EncString((byte) readByte(), readBytes(), readBytes(), readBytes());
+                case TAG_LIST -> {
+                    Type elementType = type instanceof ParameterizedType pt ? pt.getActualTypeArguments()[0] : Object.class;
+                    int size = readVarInt();
+                    List<Object> list = new ArrayList<>(Math.min(size, 1024));
+                    for (int i = 0; i < size; i++) {
+                        list.add(readValue(elementType));
+                    }
+                    yield list;
+                }
+                case TAG_RECORD -> readRecord(rawType);
+                default -> throw new IOException("Invalid tag: " + tag);
+            };
+        }
+
+        private String readString() throws IOException {
+            int index = readVarInt();
+            if (index >= strings.length) {
+                throw new IOException("Invalid string reference: " + index);
+            }
+            return strings[index];
+        }
+
+        private static Object convertString(String value, Class<?> rawType) {
+            if (rawType == UUID.class) {
+                return UUID.fromString(value);
+            } else if (rawType == URI.class) {
+                return URI.create(value);
+            } else if (rawType.isEnum()) {
+                return enumValue(rawType, value);
+            }
+            return value;
+        }
+
+        /**
+         * @return the constant or {@code null} if the constant was removed
+         *         from the enum
+         */
+        private static Object enumValue(Class<?> type, String name) {
+            for (Object constant : type.getEnumConstants()) {
+                if (((Enum<?>) constant).name().equals(name)) {
+                    return constant;
+                }
+            }
+            LOG.log(Level.WARNING, "Ignoring unknown constant {0}.{1}", type.getName(), name);
+            return null;
+        }
+
+        private byte[] readBytes() throws IOException {
+            int length = readVarInt();
+            if (length == 0) {
+                return null;
+            }
+            return readData(length - 1);
+        }
+
+        private Object readRecord(Class<?> rawType) throws IOException, ReflectiveOperationException {
+            int schema = readVarInt();
+            if (schema == schemas.size()) {
+                String[] names = new String[readVarInt()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = readString();
+                }
+                schemas.add(names);
+                componentMappings.add(null);
+            } else if (schema > schemas.size()) {
+                throw new IOException("Invalid schema reference: " + schema);
+            }
+            String[] names = schemas.get(schema);
+            if (!rawType.isRecord()) {
+                // Value of a component, that does not exist anymore
+                for (int i = 0; i < names.length; i++) {
+                    readValue(Object.class);
+                }
+                return null;
+            }
+            RecordInfo info = RECORD_INFO.get(rawType);
+            int[] mapping = componentMappings.get(schema);
+            if (mapping == null) {
+                // A schema is bound to a single record type
+                mapping = info.mapping(names);
+                componentMappings.set(schema, mapping);
+            }
+            Object[] arguments = info.defaultArguments();
+            for (int i = 0; i < names.length; i++) {
+                int component = mapping[i];
+                Object value = readValue(component < 0 ? Object.class : info.types[component]);
+                if (component >= 0 && value != null && info.accepts(component, value)) {
+                    arguments[component] = value;
+                }
+            }
+            return info.constructor.newInstance(arguments);
+        }
+
+        private static Class<?> rawType(Type type) {
+            if (type instanceof Class<?> c) {
+                return c;
+            } else if (type instanceof ParameterizedType pt) {
+                return (Class<?>) pt.getRawType();
+            }
+            return Object.class;
+        }
+    }
+
+    private static final class RecordInfo {
+
+        private final String[] names;
+        private final Type[] types;
+        private final Class<?>[] rawTypes;
+        private final Method[] accessors;
+        private final Constructor<?> constructor;
+
+        RecordInfo(Class<?> type) {
+            RecordComponent[] components = type.getRecordComponents();
+            names = new String[components.length];
+            types = new Type[components.length];
+            rawTypes = new Class<?>[components.length];
+            accessors = new Method[components.length];
+            for (int i = 0; i < components.length; i++) {
+                names[i] = components[i].getName();
+                types[i] = components[i].getGenericType();
+                rawTypes[i] = components[i].getType();
+                accessors[i] = components[i].getAccessor();
+                accessors[i].setAccessible(true);
+            }
+            try {
+                constructor = type.getDeclaredConstructor(rawTypes);
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        int[] mapping(String[] schemaNames) {
+            List<String> componentNames = List.of(names);
+            int[] mapping = new int[schemaNames.length];
+            for (int i = 0; i < schemaNames.length; i++) {
+                mapping[i] = componentNames.indexOf(schemaNames[i]);
+            }
+            return mapping;
+        }
+
+        /**
+         * @return {@code false} if the type of the component changed, so
+         *         that the stored value does not fit anymore
+         */
+        boolean accepts(int component, Object value) {
+            Class<?> rawType = rawTypes[component];
+            if (rawType == boolean.class) {
+                return value instanceof Boolean;
+            } else if (rawType == int.class) {
+                return value instanceof Integer;
+            } else if (rawType == long.class) {
+                return value instanceof Long;
+            }
+            return rawType.isInstance(value);
+        }
+
+        Object[] defaultArguments() {
+            Object[] arguments = new Object[rawTypes.length];
+            for (int i = 0; i < rawTypes.length; i++) {
+                if (rawTypes[i] == boolean.class) {
+                    arguments[i] = false;
+                } else if (rawTypes[i] == int.class) {
+                    arguments[i] = 0;
+                } else if (rawTypes[i] == long.class) {
+                    arguments[i] = 0L;
+                }
+            }
+            return arguments;
+        }
+    }
+
+    /**
+     * Record form of the {@link ClientState}, so that it can be written like
+     * the records of the sync data.
+     */
+    private record StoredState(
+            UUID clientId,
+            URI baseUri,
+            String email,
+            String refreshToken,
+            SyncData syncData,
+            PreloginResult preloginResult) {
+
+        static StoredState of(ClientState state) {
+            return new StoredState(state.getClientId(), state.getBaseUri(), state.getEmail(), state.getRefreshToken(), state.getSyncData(), state.getPreloginResult());
+        }
+
+        ClientState toClientState() {
+            ClientState state = new ClientState();
+            state.setClientId(clientId);
+            state.setBaseUri(baseUri);
+            state.setEmail(email);
+            state.setRefreshToken(refreshToken);
+            state.setSyncData(syncData);
+            state.setPreloginResult(preloginResult);
+            return state;
+        }
+    }
+}
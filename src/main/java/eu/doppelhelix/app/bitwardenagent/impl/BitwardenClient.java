@@ -16,16 +16,14 @@
 package eu.doppelhelix.app.bitwardenagent.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import eu.doppelhelix.app.bitwardenagent.http.CipherData;
+import eu.doppelhelix.app.bitwardenagent.Configuration;
 import eu.doppelhelix.app.bitwardenagent.http.ConfigResponse;
-import eu.doppelhelix.app.bitwardenagent.http.FieldData;
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
 import eu.doppelhelix.app.bitwardenagent.http.LoginErrorData;
 import eu.doppelhelix.app.bitwardenagent.http.OrganzationData;
-import eu.doppelhelix.app.bitwardenagent.http.PasswordHistoryEntry;
 import eu.doppelhelix.app.bitwardenagent.http.PreloginResult;
 import eu.doppelhelix.app.bitwardenagent.http.SyncData;
 import eu.doppelhelix.app.bitwardenagent.http.TokenResult;
-import eu.doppelhelix.app.bitwardenagent.http.UriData;
 import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.ForbiddenException;
 import jakarta.ws.rs.NotAuthorizedException;
@@ -35,9 +33,11 @@ import jakarta.ws.rs.client.WebTarget;
 import jakarta.ws.rs.core.Form;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.util.EnumSet;
@@ -48,11 +48,12 @@ import java.util.Objects;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 import org.glassfish.jersey.client.JerseyClientBuilder;
 import org.glassfish.jersey.jackson.internal.jackson.jaxrs.json.JacksonJsonProvider;
 import org.glassfish.jersey.logging.LoggingFeature;
@@ -71,6 +72,7 @@ import static eu.doppelhelix.app.bitwardenagent.impl.UtilCryto.encryptString;
 import static eu.doppelhelix.app.bitwardenagent.impl.UtilCryto.encryptionKeyFromMasterKey;
 import static java.lang.System.Logger.Level.INFO;
 import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.Logger.Level.WARNING;
 
 // https://bitwarden.com/help/kdf-algorithms/
 // https://www.avangate.it/wp-content/uploads/2024/04/help-bitwarden-security-white-paper.pdf
@@ -108,7 +110,7 @@ public class BitwardenClient implements Closeable {
     private final static ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
     private final List<StateObserver> stateObserver = new CopyOnWriteArrayList<>();
     private final Client client;
-    private final Path configPath;
+    private final Path statePath;
     private UUID deviceId = UUID.randomUUID();
     private String deviceName = "BitwardenAgent";
     private String email;
@@ -118,9 +120,18 @@ public class BitwardenClient implements Closeable {
     private EncryptionKey stretchedMasterKey;
     private EncryptionKey userKey;
     private PrivateKey userPrivateKey;
-    private Map<String, EncryptionKey> organizationKeys;
+    private EncString userPrivateKeyPayload;
+    private final Map<EncString, EncryptionKey> organizationKeyCache = new ConcurrentHashMap<>();
+    private OrganizationKeys organizationKeys;
     private SyncData syncData;
     private State state = State.Started;
+    // A ReentrantLock instead of a monitor, so that virtual threads waiting
+    // for the decryption do not pin their carrier threads
+    private final ReentrantLock decryptedSyncDataLock = new ReentrantLock();
+    private volatile DecryptedSyncData decryptedSyncData;
+    private volatile long syncGeneration;
+    private final SyncDataDecryptor syncDataDecryptor = new SyncDataDecryptor();
+    private final StatePersister statePersister;
 
     public BitwardenClient() {
         client = JerseyClientBuilder.newBuilder()
@@ -129,23 +140,21 @@ public class BitwardenClient implements Closeable {
                 .register(new LoggingFeature(Logger.getLogger(BitwardenClient.class.getName()), Level.FINE, LoggingFeature.Verbosity.PAYLOAD_ANY, 65535))
                 .register(new JacksonJsonProvider(objectMapper))
                 .build();
-        configPath = isWindows()
-                ? Path.of(System.getenv("APPDATA"), "BitwardenAgent", "state.json")
-                : Path.of(System.getenv("HOME"), ".config/BitwardenAgent", "state.json");
-        if (Files.exists(configPath)) {
-            try {
-                ClientState config = objectMapper.readValue(configPath.toFile(), ClientState.class);
-                email = config.getEmail();
-                baseURI = config.getBaseUri() != null ? config.getBaseUri() : this.baseURI;
-                if(config.getClientId() != null) {
-                    deviceId = config.getClientId();
-                }
-                refreshToken = config.getRefreshToken();
-                syncData = config.getSyncData();
-                preloginResult = config.getPreloginResult();
-            } catch (IOException ex) {
-                LOG.log(ERROR, (String) null, ex);
+        Path stateDirectory = isWindows()
+                ? Path.of(System.getenv("APPDATA"), "BitwardenAgent")
+                : Path.of(System.getenv("HOME"), ".config/BitwardenAgent");
+        statePath = stateDirectory.resolve("state.bin");
+        statePersister = new StatePersister(statePath);
+        ClientState config = loadState(stateDirectory.resolve("state.json"));
+        if (config != null) {
+            email = config.getEmail();
+            baseURI = config.getBaseUri() != null ? config.getBaseUri() : this.baseURI;
+            if(config.getClientId() != null) {
+                deviceId = config.getClientId();
             }
+            refreshToken = config.getRefreshToken();
+            syncData = config.getSyncData();
+            preloginResult = config.getPreloginResult();
         }
         if(email != null && baseURI != null && preloginResult != null && syncData != null) {
             setState(State.LocalStatePresent);
@@ -154,6 +163,45 @@ public class BitwardenClient implements Closeable {
         }
     }
 
+    /**
+     * Load the saved state. A state in the JSON format of older versions is
+     * migrated to the binary format. Once the binary file was written, the
+     * JSON file is kept as backup, that is used if the binary file can not be
+     * read. The backup is removed after the binary file was read successfully.
+     */
+    private ClientState loadState(Path legacyStatePath) {
+        Path backupPath = legacyStatePath.resolveSibling(legacyStatePath.getFileName() + ".bak");
+        if (Files.exists(statePath)) {
+            try (InputStream is = Files.newInputStream(statePath)) {
+                ClientState config = BinaryStateFormat.read(is);
+                try {
+                    Files.deleteIfExists(backupPath);
+                } catch (IOException ex) {
+                    LOG.log(WARNING, (String) null, ex);
+                }
+                return config;
+            } catch (IOException ex) {
+                LOG.log(ERROR, (String) null, ex);
+            }
+        }
+        for (Path path : List.of(legacyStatePath, backupPath)) {
+            if (!Files.exists(path)) {
+                continue;
+            }
+            try {
+                ClientState config = objectMapper.readValue(path.toFile(), ClientState.class);
+                statePersister.store(config);
+                if (statePersister.flush() && path.equals(legacyStatePath)) {
+                    Files.move(legacyStatePath, backupPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return config;
+            } catch (IOException ex) {
+                LOG.log(ERROR, (String) null, ex);
+            }
+        }
+        return null;
+    }
+
     public UUID getDeviceId() {
         return deviceId;
     }
@@ -175,15 +223,11 @@ public class BitwardenClient implements Closeable {
         stretchedMasterKey = encryptionKeyFromMasterKey(masterKey);
 
         if (syncData != null) {
-            userKey = decryptKey(stretchedMasterKey, syncData.profile().key());
-            userPrivateKey = decryptPrivateKey(userKey, syncData.profile().privateKey());
-            Map<String, EncryptionKey> organizationKeysBuilder = new HashMap<>();
-            for (OrganzationData od : syncData.profile().organizations()) {
-                organizationKeysBuilder.put(od.id(), decryptKey(userPrivateKey, od.key()));
-            }
-            organizationKeys = organizationKeysBuilder;
+            updateKeys(syncData);
         }
 
+        invalidateSyncData();
+
         setState(Offline);
 
         if(refreshToken != null) {
@@ -234,19 +278,15 @@ public class BitwardenClient implements Closeable {
 
             syncData = baseTarget
                     .path("api/sync")
-                    .queryParam("excludeDomains", "true")
+                    .queryParam("excludeDomains", String.valueOf(!Configuration.getConfiguration().isSyncEquivalentDomains()))
                     .request()
                     .header("Authorization", "Bearer " + loginResponse.accessToken())
                     .header("Bitwarden-Client-Version", "2026.1.0")
                     .get(SyncData.class);
 
-            userKey = decryptKey(stretchedMasterKey, syncData.profile().key());
-            userPrivateKey = decryptPrivateKey(userKey, syncData.profile().privateKey());
-            Map<String, EncryptionKey> organizationKeysBuilder = new HashMap<>();
-            for (OrganzationData od : syncData.profile().organizations()) {
-                organizationKeysBuilder.put(od.id(), decryptKey(userPrivateKey, od.key()));
-            }
-            organizationKeys = organizationKeysBuilder;
+            updateKeys(syncData);
+
+            invalidateSyncData();
 
             store();
 
@@ -273,189 +313,84 @@ public class BitwardenClient implements Closeable {
         }
     }
 
-    public DecryptedSyncData getSyncData() {
-        EncryptionKey localUserKey = userKey;
-        if(userKey == null || this.organizationKeys == null) {
-            return null;
-        }
-        Map<String, EncryptionKey> localOrganizationKeys = new HashMap<>(this.organizationKeys);
-        SyncData localSyncData = syncData;
-        if (localSyncData == null) {
-            return null;
+    /**
+     * Decrypt the user key and set up the organization keys for the supplied
+     * sync data. The RSA private key of the user is only decrypted again if it
+     * changed, organization keys are unwrapped on first use.
+     */
+    private void updateKeys(SyncData newSyncData) throws GeneralSecurityException {
+        userKey = decryptKey(stretchedMasterKey, newSyncData.profile().key());
+        EncString privateKeyPayload = newSyncData.profile().privateKey();
+        if (userPrivateKey == null || !privateKeyPayload.equals(userPrivateKeyPayload)) {
+            userPrivateKey = decryptPrivateKey(userKey, privateKeyPayload);
+            userPrivateKeyPayload = privateKeyPayload;
+            organizationKeyCache.clear();
         }
-        DecryptedSyncData result = new DecryptedSyncData();
-        result.setId(localSyncData.profile().id());
-        result.setEmail(localSyncData.profile().email());
-        result.setName(localSyncData.profile().name());
-        localSyncData.profile().organizations().forEach(od -> {
-            result.getOrganizationNames().put(od.id(), od.name());
-        });
-        localSyncData.collections().forEach(c -> {
-            try {
-                result.getCollectionNames().put(c.id(), decryptString(organizationKeys, c.organizationId(), c.name()));
-            } catch (GeneralSecurityException ex) {
-                LOG.log(ERROR, (String) null, ex);
-            }
-        });
-        localSyncData.folders().forEach(f -> {
-            try {
-                result.getFolderNames().put(f.id(), UtilCryto.decryptString(userKey, f.name()));
-            } catch (GeneralSecurityException ex) {
-                LOG.log(ERROR, (String) null, ex);
-            }
-        });
-        localSyncData.ciphers().forEach(cd -> {
-            try {
-                DecryptedCipherData dcd = new DecryptedCipherData();
-                dcd.setName(decryptString(localUserKey, localOrganizationKeys, cd, cd.name()));
-                dcd.setId(cd.id());
-                dcd.setOrganizationId(cd.organizationId());
-                dcd.setFolderId(cd.folderId());
-                if(dcd.getFolderId() != null && result.getFolderNames().containsKey(dcd.getFolderId())) {
-                    dcd.setFolder(result.getFolderNames().get(dcd.getFolderId()));
-                }
-                if (cd.collectionIds() != null) {
-                    dcd.getCollectionIds().addAll(cd.collectionIds());
-                    dcd.getCollections().addAll(
-                            cd.collectionIds()
-                                    .stream()
-                                    .map(ci -> result.getCollectionNames().get(ci))
-                                    .filter(cn -> cn != null)
-                                    .collect(Collectors.toList())
-                    );
-                }
-                if (cd.organizationId() != null) {
-                    dcd.setOrganization(result.getOrganizationNames().get(cd.organizationId()));
-                }
-                if (cd.login() != null) {
-                    DecryptedLoginData dld = new DecryptedLoginData();
-                    dld.setPassword(decryptString(localUserKey, localOrganizationKeys, cd, cd.login().password()));
-                    dld.setTotp(decryptString(localUserKey, localOrganizationKeys, cd, cd.login().totp()));
-                    dld.setUri(decryptString(localUserKey, localOrganizationKeys, cd, cd.login().uri()));
-                    dld.setUsername(decryptString(localUserKey, localOrganizationKeys, cd, cd.login().username()));
-                    if (cd.login().uris() != null) {
-                        for (UriData ud : cd.login().uris()) {
-                            DecryptedUriData dud = new DecryptedUriData();
-                            dud.setMatch(ud.match());
-                            dud.setUri(decryptString(localUserKey, localOrganizationKeys, cd, ud.uri()));
-                            dud.setUriChecksum(decryptString(localUserKey, localOrganizationKeys, cd, ud.uriChecksum()));
-                            dld.getUriData().add(dud);
-                        };
-                    }
-                    dcd.setLogin(dld);
-                }
-                if (cd.sshKey() != null) {
-                    DecryptedSshKey dsk = new DecryptedSshKey();
-                    dsk.setKeyFingerprint(decryptString(localUserKey, localOrganizationKeys, cd, cd.sshKey().keyFingerprint()));
-                    dsk.setPrivateKey(decryptString(localUserKey, localOrganizationKeys, cd, cd.sshKey().privateKey()));
-                    dsk.setPublicKey(decryptString(localUserKey, localOrganizationKeys, cd, cd.sshKey().publicKey()));
-                    dcd.setSshKey(dsk);
-                }
-                if (cd.card() != null) {
-                    DecryptedCardData decryptedCardData = new DecryptedCardData();
-                    decryptedCardData.setBrand(decryptString(cd, cd.card().brand()));
-                    decryptedCardData.setCardholderName(decryptString(cd, cd.card().cardholderName()));
-                    decryptedCardData.setNumber(decryptString(cd, cd.card().number()));
-                    decryptedCardData.setExpMonth(decryptString(cd, cd.card().expMonth()));
-                    decryptedCardData.setExpYear(decryptString(cd, cd.card().expYear()));
-                    decryptedCardData.setCode(decryptString(cd, cd.card().code()));
-                    dcd.setCard(decryptedCardData);
-                }
-                if (cd.identity() != null) {
-                    DecryptedIdentityData decryptedIdentityData = new DecryptedIdentityData();
-                    decryptedIdentityData.setTitle(decryptString(cd, cd.identity().title()));
-                    decryptedIdentityData.setFirstName(decryptString(cd, cd.identity().firstName()));
-                    decryptedIdentityData.setMiddleName(decryptString(cd, cd.identity().middleName()));
-                    decryptedIdentityData.setLastName(decryptString(cd, cd.identity().lastName()));
-                    decryptedIdentityData.setAddress1(decryptString(cd, cd.identity().address1()));
-                    decryptedIdentityData.setAddress2(decryptString(cd, cd.identity().address2()));
-                    decryptedIdentityData.setAddress3(decryptString(cd, cd.identity().address3()));
-                    decryptedIdentityData.setCity(decryptString(cd, cd.identity().city()));
-                    decryptedIdentityData.setState(decryptString(cd, cd.identity().state()));
-                    decryptedIdentityData.setPostalCode(decryptString(cd, cd.identity().postalCode()));
-                    decryptedIdentityData.setCountry(decryptString(cd, cd.identity().country()));
-                    decryptedIdentityData.setCompany(decryptString(cd, cd.identity().company()));
-                    decryptedIdentityData.setEmail(decryptString(cd, cd.identity().email()));
-                    decryptedIdentityData.setPhone(decryptString(cd, cd.identity().phone()));
-                    decryptedIdentityData.setSsn(decryptString(cd, cd.identity().ssn()));
-                    decryptedIdentityData.setUsername(decryptString(cd, cd.identity().username()));
-                    decryptedIdentityData.setPassportNumber(decryptString(cd, cd.identity().passportNumber()));
-                    decryptedIdentityData.setLicenseNumber(decryptString(cd, cd.identity().licenseNumber()));
-                    dcd.setIdentity(decryptedIdentityData);
-                }
-                dcd.setNotes(decryptString(localUserKey, localOrganizationKeys, cd, cd.notes()));
-                if (cd.fields() != null) {
-                    for (FieldData fd : cd.fields()) {
-                        DecryptedFieldData dfd = new DecryptedFieldData();
-                        dfd.setLinkedId(fd.linkedId());
-                        dfd.setType(fd.type());
-                        dfd.setName(decryptString(localUserKey, localOrganizationKeys, cd, fd.name()));
-                        dfd.setValue(decryptString(localUserKey, localOrganizationKeys, cd, fd.value()));
-                        dcd.getFields().add(dfd);
-                    }
-                }
-                if (cd.passwordHistory() != null) {
-                    for(PasswordHistoryEntry phe: cd.passwordHistory()) {
-                        DecryptedPasswordHistoryEntry dphe = new DecryptedPasswordHistoryEntry();
-                        dphe.setLastUsedDate(phe.lastUsedDate());
-                        dphe.setPassword(decryptString(localUserKey, localOrganizationKeys, cd, phe.password()));
-                        dcd.getPasswordHistory().add(dphe);
-                    }
-                }
-                dcd.setArchivedDate(cd.archivedDate());
-                dcd.setCreationDate(cd.creationDate());
-                dcd.setDeletedDate(cd.deletedDate());
-                dcd.setRevisionDate(cd.revisionDate());
-                result.getCiphers().add(dcd);
-            } catch (Exception ex) {
-                LOG.log(ERROR, (String) null, ex);
+        Map<String, EncString> wrappedKeys = new HashMap<>();
+        for (OrganzationData od : newSyncData.profile().organizations()) {
+            if (od.key() != null) {
+                wrappedKeys.put(od.id(), od.key());
             }
-        });
-        localSyncData.folders().forEach(f -> {
-            try {
-                DecryptedFolder df = new DecryptedFolder();
-                df.setId(f.id());
-                df.setName(UtilCryto.decryptString(localUserKey, f.name()));
-                df.setRevisionDate(f.revisionDate());
-                result.getFolder().add(df);
-            } catch (Exception ex) {
-                LOG.log(ERROR, (String) null, ex);
-            }
-        });
-        localSyncData.collections().forEach(c -> {
-            try {
-                DecryptedCollection dc = new DecryptedCollection();
-                dc.setId(c.id());
-                dc.setOrganizationId(c.organizationId());
-                dc.setName(decryptString(localOrganizationKeys, c.organizationId(), c.name()));
-                dc.setHidePasswords(c.hidePasswords());
-                dc.setManage(c.manage());
-                result.getCollections().add(dc);
-            } catch (Exception ex) {
-                LOG.log(ERROR, (String) null, ex);
-            }
-        });
+        }
+        organizationKeyCache.keySet().retainAll(wrappedKeys.values());
+        organizationKeys = new OrganizationKeys(userPrivateKey, wrappedKeys, organizationKeyCache);
+    }
 
-        return result;
+    /**
+     * Get the decrypted view of the vault. The returned instance is created
+     * once for the current sync data and keys and shared between all callers
+     * until {@link #sync()}, {@link #unlock(char[])} or {@link #clear()}
+     * replace the underlying data. It must not be modified.
+     *
+     * @return decrypted vault or {@code null} if the client is not unlocked
+     */
+    public DecryptedSyncData getSyncData() {
+        DecryptedSyncData result = decryptedSyncData;
+        if (result != null) {
+            return result;
+        }
+        decryptedSyncDataLock.lock();
+        try {
+            if (decryptedSyncData == null) {
+                decryptedSyncData = decryptSyncData();
+            }
+            return decryptedSyncData;
+        } finally {
+            decryptedSyncDataLock.unlock();
+        }
     }
 
-    public String decryptString(CipherData cd, String encryptedString) throws GeneralSecurityException {
-        return decryptString(userKey, organizationKeys, cd, encryptedString);
+    /**
+     * The generation is incremented each time the underlying data of the
+     * decrypted view is replaced. Reading it does not decrypt anything.
+     *
+     * @return the generation of the data, that {@link #getSyncData()} is
+     *         based on
+     */
+    public long getSyncGeneration() {
+        return syncGeneration;
     }
 
-    public static String decryptString(EncryptionKey userKey, Map<String, EncryptionKey> organizationKeys, CipherData cd, String encryptedString) throws GeneralSecurityException {
-        EncryptionKey ek;
-        if (cd.organizationId() == null) {
-            ek = userKey;
-        } else {
-            ek = organizationKeys.get(cd.organizationId());
+    private void invalidateSyncData() {
+        decryptedSyncDataLock.lock();
+        try {
+            decryptedSyncData = null;
+            syncGeneration++;
+        } finally {
+            decryptedSyncDataLock.unlock();
         }
-        return UtilCryto.decryptString(ek, encryptedString);
     }
 
-    public static String decryptString(Map<String, EncryptionKey> organizationKeys, String organizationId, String encryptedString) throws GeneralSecurityException {
-        EncryptionKey ek = organizationKeys.get(organizationId);
-        return UtilCryto.decryptString(ek, encryptedString);
+    private DecryptedSyncData decryptSyncData() {
+        EncryptionKey localUserKey = userKey;
+        OrganizationKeys localOrganizationKeys = organizationKeys;
+        SyncData localSyncData = syncData;
+        if (localUserKey == null || localOrganizationKeys == null || localSyncData == null) {
+            return null;
+        }
+        DecryptedSyncData result = syncDataDecryptor.decrypt(localSyncData, localUserKey, localOrganizationKeys);
+        result.setGeneration(syncGeneration);
+        return result;
     }
 
     private void store() {
@@ -466,16 +401,12 @@ public class BitwardenClient implements Closeable {
         config.setRefreshToken(refreshToken);
         config.setSyncData(syncData);
         config.setPreloginResult(preloginResult);
-        try {
-            Files.createDirectories(configPath.getParent());
-            objectMapper.writeValue(configPath.toFile(), config);
-        } catch (IOException ex) {
-            LOG.log(ERROR, (String) null, ex);
-        }
+        statePersister.store(config);
     }
 
     @Override
     public void close() throws IOException {
+        statePersister.close();
         client.close();
     }
 
@@ -489,8 +420,12 @@ public class BitwardenClient implements Closeable {
         this.stretchedMasterKey = null;
         this.userKey = null;
         this.userPrivateKey = null;
+        this.userPrivateKeyPayload = null;
+        this.organizationKeyCache.clear();
         this.organizationKeys = null;
         this.syncData = null;
+        invalidateSyncData();
+        syncDataDecryptor.reset();
         store();
         setState(Initial);
     }
@@ -15,9 +15,12 @@
  */
 package eu.doppelhelix.app.bitwardenagent.impl;
 
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DecryptedCipherData {
 
@@ -29,8 +32,9 @@ public class DecryptedCipherData {
     private DecryptedSshKey sshKey;
     private DecryptedCardData card;
     private DecryptedIdentityData identity;
-    private String notes;
+    private LazyDecryptedString notes = LazyDecryptedString.ofPlain(null);
     private final List<DecryptedFieldData> fields = new ArrayList<> ();
+    private volatile Map<String, DecryptedFieldData> fieldsByName;
     private String folderId;
     private String folder;
     private final List<String> collectionIds = new ArrayList<>();
@@ -93,17 +97,42 @@ public class DecryptedCipherData {
     }
 
     public String getNotes() {
-        return notes;
+        return notes.get();
     }
 
     public void setNotes(String notes) {
-        this.notes = notes;
+        this.notes = LazyDecryptedString.ofPlain(notes);
+    }
+
+    void setEncryptedNotes(EncryptionKey key, EncString encryptedNotes) {
+        this.notes = LazyDecryptedString.ofEncrypted(key, encryptedNotes);
     }
 
     public List<DecryptedFieldData> getFields() {
         return fields;
     }
 
+    /**
+     * Look up a custom field by name. The index is built on first use, so the
+     * fields must not be modified after that.
+     *
+     * @param name name of the field
+     * @return the first field with the supplied name or {@code null}
+     */
+    public DecryptedFieldData getField(String name) {
+        Map<String, DecryptedFieldData> index = fieldsByName;
+        if (index == null) {
+            index = new HashMap<>();
+            for (DecryptedFieldData dfd : fields) {
+                if (dfd.getName() != null) {
+                    index.putIfAbsent(dfd.getName(), dfd);
+                }
+            }
+            fieldsByName = index;
+        }
+        return index.get(name);
+    }
+
     public String getFolderId() {
         return folderId;
     }
@@ -15,6 +15,7 @@
  */
 package eu.doppelhelix.app.bitwardenagent.impl;
 
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
 import eu.doppelhelix.app.bitwardenagent.http.FieldType;
 import eu.doppelhelix.app.bitwardenagent.http.LinkedId;
 
@@ -22,7 +23,7 @@ public class DecryptedFieldData {
 
     private FieldType type;
     private String name;
-    private String value;
+    private LazyDecryptedString value = LazyDecryptedString.ofPlain(null);
     private LinkedId linkedId;
 
     public DecryptedFieldData() {
@@ -45,11 +46,15 @@ public class DecryptedFieldData {
     }
 
     public String getValue() {
-        return value;
+        return value.get();
     }
 
     public void setValue(String value) {
-        this.value = value;
+        this.value = LazyDecryptedString.ofPlain(value);
+    }
+
+    void setEncryptedValue(EncryptionKey key, EncString encryptedValue) {
+        this.value = LazyDecryptedString.ofEncrypted(key, encryptedValue);
     }
 
     public LinkedId getLinkedId() {
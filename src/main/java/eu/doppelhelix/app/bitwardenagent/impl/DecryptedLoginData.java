@@ -15,6 +15,7 @@
  */
 package eu.doppelhelix.app.bitwardenagent.impl;
 
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,8 +24,9 @@ public class DecryptedLoginData {
 
     private String uri;
     private String username;
-    private String password;
-    private String totp;
+    private LazyDecryptedString password = LazyDecryptedString.ofPlain(null);
+    private LazyDecryptedString totp = LazyDecryptedString.ofPlain(null);
+    private volatile TOTPUtil.TOTPGenerator totpGenerator;
     private final List<DecryptedUriData> uriData = new ArrayList<>();
 
     public String getUri() {
@@ -44,19 +46,44 @@ public class DecryptedLoginData {
     }
 
     public String getPassword() {
-        return password;
+        return password.get();
     }
 
     public void setPassword(String password) {
-        this.password = password;
+        this.password = LazyDecryptedString.ofPlain(password);
+    }
+
+    void setEncryptedPassword(EncryptionKey key, EncString encryptedPassword) {
+        this.password = LazyDecryptedString.ofEncrypted(key, encryptedPassword);
     }
 
     public String getTotp() {
-        return totp;
+        return totp.get();
     }
 
     public void setTotp(String totp) {
-        this.totp = totp;
+        this.totp = LazyDecryptedString.ofPlain(totp);
+        this.totpGenerator = null;
+    }
+
+    void setEncryptedTotp(EncryptionKey key, EncString encryptedTotp) {
+        this.totp = LazyDecryptedString.ofEncrypted(key, encryptedTotp);
+        this.totpGenerator = null;
+    }
+
+    /**
+     * The TOTP parameters are parsed once and kept with the login, so they
+     * are dropped with the vault snapshot.
+     *
+     * @return the current token of the TOTP secret
+     */
+    public TOTPUtil.TOTPToken getTotpToken() throws TOTPUtil.TOTPCalculationFailedException {
+        TOTPUtil.TOTPGenerator generator = totpGenerator;
+        if (generator == null) {
+            generator = TOTPUtil.createGenerator(getTotp());
+            totpGenerator = generator;
+        }
+        return generator.token();
     }
 
     public List<DecryptedUriData> getUriData() {
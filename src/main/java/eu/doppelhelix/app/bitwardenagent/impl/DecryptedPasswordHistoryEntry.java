@@ -15,21 +15,26 @@
  */
 package eu.doppelhelix.app.bitwardenagent.impl;
 
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
 import java.time.OffsetDateTime;
 
 public class DecryptedPasswordHistoryEntry {
-    private String password;
+    private LazyDecryptedString password = LazyDecryptedString.ofPlain(null);
     private OffsetDateTime lastUsedDate;
 
     public DecryptedPasswordHistoryEntry() {
     }
 
     public String getPassword() {
-        return password;
+        return password.get();
     }
 
     public void setPassword(String password) {
-        this.password = password;
+        this.password = LazyDecryptedString.ofPlain(password);
+    }
+
+    void setEncryptedPassword(EncryptionKey key, EncString encryptedPassword) {
+        this.password = LazyDecryptedString.ofEncrypted(key, encryptedPassword);
     }
 
     public OffsetDateTime getLastUsedDate() {
@@ -15,28 +15,37 @@
  */
 package eu.doppelhelix.app.bitwardenagent.impl;
 
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
 public class DecryptedSshKey {
-    private String privateKey;
-    private String publicKey;
+    private LazyDecryptedString privateKey = LazyDecryptedString.ofPlain(null);
+    private LazyDecryptedString publicKey = LazyDecryptedString.ofPlain(null);
     private String keyFingerprint;
 
     public DecryptedSshKey() {
     }
 
     public String getPrivateKey() {
-        return privateKey;
+        return privateKey.get();
     }
 
     public void setPrivateKey(String privateKey) {
-        this.privateKey = privateKey;
+        this.privateKey = LazyDecryptedString.ofPlain(privateKey);
+    }
+
+    void setEncryptedPrivateKey(EncryptionKey key, EncString encryptedPrivateKey) {
+        this.privateKey = LazyDecryptedString.ofEncrypted(key, encryptedPrivateKey);
     }
 
     public String getPublicKey() {
-        return publicKey;
+        return publicKey.get();
     }
 
     public void setPublicKey(String publicKey) {
-        this.publicKey = publicKey;
+        this.publicKey = LazyDecryptedString.ofPlain(publicKey);
+    }
+
+    void setEncryptedPublicKey(EncryptionKey key, EncString encryptedPublicKey) {
+        this.publicKey = LazyDecryptedString.ofEncrypted(key, encryptedPublicKey);
     }
 
     public String getKeyFingerprint() {
@@ -16,21 +16,43 @@
 package eu.doppelhelix.app.bitwardenagent.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class DecryptedSyncData {
 
+    private long generation;
     private String id;
     private String email;
     private String name;
-    private final Map<String, String> organizationNames = new HashMap<>();
-    private final Map<String, String> folderNames = new HashMap<>();
-    private final Map<String, String> collectionNames = new HashMap<>();
-    private final List<DecryptedCipherData> ciphers = new ArrayList<>();
-    private final List<DecryptedCollection> collections = new ArrayList<>();
-    private final List<DecryptedFolder> folder = new ArrayList<>();
+    private Map<String, String> organizationNames = new HashMap<>();
+    private Map<String, String> folderNames = new HashMap<>();
+    private Map<String, String> collectionNames = new HashMap<>();
+    private List<DecryptedCipherData> ciphers = new ArrayList<>();
+    private List<DecryptedCollection> collections = new ArrayList<>();
+    private List<DecryptedFolder> folder = new ArrayList<>();
+    private Map<String, DecryptedCipherData> ciphersById = Map.of();
+    private Map<String, List<DecryptedCipherData>> ciphersByFolderId = Map.of();
+    private Map<String, List<DecryptedCipherData>> ciphersByCollectionId = Map.of();
+    private Map<String, List<DecryptedCipherData>> ciphersByName = Map.of();
+    private Map<FolderEntry, List<DecryptedCipherData>> ciphersByFolderAndName = Map.of();
+    private Map<String, List<DecryptedCipherData>> ciphersByUsername = Map.of();
+    private EquivalentDomains equivalentDomains = EquivalentDomains.NONE;
+    private volatile UriMatcher uriMatcher;
+
+    /**
+     * @return generation of the data this snapshot was decrypted from, see
+     *         {@link BitwardenClient#getSyncGeneration()}
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    void setGeneration(long generation) {
+        this.generation = generation;
+    }
 
     public String getId() {
         return id;
@@ -68,6 +90,14 @@ public class DecryptedSyncData {
         return collectionNames;
     }
 
+    public EquivalentDomains getEquivalentDomains() {
+        return equivalentDomains;
+    }
+
+    public void setEquivalentDomains(EquivalentDomains equivalentDomains) {
+        this.equivalentDomains = equivalentDomains;
+    }
+
     public List<DecryptedCipherData> getCiphers() {
         return ciphers;
     }
@@ -80,4 +110,124 @@ public class DecryptedSyncData {
         return folder;
     }
 
+    /**
+     * @param id id of the cipher
+     * @return the cipher with the supplied id or {@code null} if not present
+     */
+    public DecryptedCipherData getCipher(String id) {
+        return ciphersById.get(id);
+    }
+
+    /**
+     * @param folderId id of the folder
+     * @return ciphers placed in the supplied folder
+     */
+    public List<DecryptedCipherData> getCiphersInFolder(String folderId) {
+        return ciphersByFolderId.getOrDefault(folderId, List.of());
+    }
+
+    /**
+     * @param collectionId id of the collection
+     * @return ciphers that are member of the supplied collection
+     */
+    public List<DecryptedCipherData> getCiphersInCollection(String collectionId) {
+        return ciphersByCollectionId.getOrDefault(collectionId, List.of());
+    }
+
+    /**
+     * @param name name of the cipher
+     * @return ciphers with the supplied name, that are not deleted
+     */
+    public List<DecryptedCipherData> getCiphersByName(String name) {
+        return ciphersByName.getOrDefault(name, List.of());
+    }
+
+    /**
+     * @param folder name of the folder or {@code null} for ciphers not placed
+     *               in a folder
+     * @param name name of the cipher
+     * @return ciphers with the supplied name in the supplied folder, that are
+     *         not deleted
+     */
+    public List<DecryptedCipherData> getCiphersByFolderAndName(String folder, String name) {
+        return ciphersByFolderAndName.getOrDefault(new FolderEntry(folder, name), List.of());
+    }
+
+    /**
+     * @param username username of the login
+     * @return ciphers with a login using the supplied username, that are not
+     *         deleted
+     */
+    public List<DecryptedCipherData> getCiphersByUsername(String username) {
+        return ciphersByUsername.getOrDefault(username, List.of());
+    }
+
+    /**
+     * The index is built on first use, not all clients query by URL.
+     *
+     * @param url URL to find the logins for
+     * @return logins, that are not deleted and have a URI matching the URL
+     */
+    public List<DecryptedCipherData> getCiphersForUrl(String url) {
+        UriMatcher matcher = uriMatcher;
+        if (matcher == null) {
+            // Building the index twice in a race is harmless
+            matcher = new UriMatcher(ciphers, equivalentDomains);
+            uriMatcher = matcher;
+        }
+        return matcher.findMatches(url);
+    }
+
+    /**
+     * Make the maps and lists of this instance read-only. The instance is
+     * shared between all callers of {@link BitwardenClient#getSyncData()}, so
+     * it must not be modified after it was handed out. The lookup indices are
+     * built here.
+     */
+    void seal() {
+        Map<String, DecryptedCipherData> ciphersByIdBuilder = new HashMap<>(ciphers.size() * 2);
+        Map<String, List<DecryptedCipherData>> ciphersByFolderIdBuilder = new HashMap<>();
+        Map<String, List<DecryptedCipherData>> ciphersByCollectionIdBuilder = new HashMap<>();
+        Map<String, List<DecryptedCipherData>> ciphersByNameBuilder = new HashMap<>(ciphers.size() * 2);
+        Map<FolderEntry, List<DecryptedCipherData>> ciphersByFolderAndNameBuilder = new HashMap<>(ciphers.size() * 2);
+        Map<String, List<DecryptedCipherData>> ciphersByUsernameBuilder = new HashMap<>();
+        for (DecryptedCipherData dcd : ciphers) {
+            ciphersByIdBuilder.putIfAbsent(dcd.getId(), dcd);
+            if (dcd.getFolderId() != null) {
+                ciphersByFolderIdBuilder.computeIfAbsent(dcd.getFolderId(), k -> new ArrayList<>()).add(dcd);
+            }
+            for (String collectionId : dcd.getCollectionIds()) {
+                ciphersByCollectionIdBuilder.computeIfAbsent(collectionId, k -> new ArrayList<>()).add(dcd);
+            }
+            // Entries in the trash are only reachable by id
+            if (dcd.getDeletedDate() == null && dcd.getName() != null) {
+                ciphersByNameBuilder.computeIfAbsent(dcd.getName(), k -> new ArrayList<>()).add(dcd);
+                ciphersByFolderAndNameBuilder.computeIfAbsent(new FolderEntry(dcd.getFolder(), dcd.getName()), k -> new ArrayList<>()).add(dcd);
+                if (dcd.getLogin() != null && dcd.getLogin().getUsername() != null) {
+                    ciphersByUsernameBuilder.computeIfAbsent(dcd.getLogin().getUsername(), k -> new ArrayList<>()).add(dcd);
+                }
+            }
+        }
+        ciphersByFolderIdBuilder.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        ciphersByCollectionIdBuilder.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        ciphersByNameBuilder.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        ciphersByFolderAndNameBuilder.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        ciphersByUsernameBuilder.replaceAll((k, v) -> Collections.unmodifiableList(v));
+        ciphersById = Collections.unmodifiableMap(ciphersByIdBuilder);
+        ciphersByFolderId = Collections.unmodifiableMap(ciphersByFolderIdBuilder);
+        ciphersByCollectionId = Collections.unmodifiableMap(ciphersByCollectionIdBuilder);
+        ciphersByName = Collections.unmodifiableMap(ciphersByNameBuilder);
+        ciphersByFolderAndName = Collections.unmodifiableMap(ciphersByFolderAndNameBuilder);
+        ciphersByUsername = Collections.unmodifiableMap(ciphersByUsernameBuilder);
+
+        organizationNames = Collections.unmodifiableMap(organizationNames);
+        folderNames = Collections.unmodifiableMap(folderNames);
+        collectionNames = Collections.unmodifiableMap(collectionNames);
+        ciphers = Collections.unmodifiableList(ciphers);
+        collections = Collections.unmodifiableList(collections);
+        folder = Collections.unmodifiableList(folder);
+    }
+
+    private record FolderEntry(String folder, String name) {
+    }
 }
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+/**
+ * Reported when a lazily decrypted value of a cipher can not be decrypted.
+ * The same exception is reported on every access of the value.
+ */
+public class DecryptionFailedException extends RuntimeException {
+
+    public DecryptionFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
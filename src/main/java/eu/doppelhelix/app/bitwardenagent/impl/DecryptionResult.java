@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * Result of decrypting a single element of a batch. Either {@code error} is
+ * set or {@code value} holds the plaintext (which is {@code null} for a
+ * {@code null} input).
+ */
+public record DecryptionResult(String value, Exception error) {
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public String getOrThrow() throws GeneralSecurityException {
+        if (error instanceof GeneralSecurityException gse) {
+            throw gse;
+        } else if (error instanceof RuntimeException re) {
+            throw re;
+        } else if (error != null) {
+            throw new IllegalStateException(error);
+        }
+        return value;
+    }
+}
@@ -15,6 +15,40 @@
  */
 package eu.doppelhelix.app.bitwardenagent.impl;
 
-public record EncryptionKey(byte[] enc, byte[] mac) {
+import javax.crypto.spec.SecretKeySpec;
 
+/**
+ * Symmetric key pair used for AES-CBC encryption and HMAC-SHA256
+ * authentication. The JCE key specs are created once, so that bulk
+ * decryption does not recreate them for every value.
+ */
+public final class EncryptionKey {
+
+    private final byte[] enc;
+    private final byte[] mac;
+    private final SecretKeySpec encKeySpec;
+    private final SecretKeySpec macKeySpec;
+
+    public EncryptionKey(byte[] enc, byte[] mac) {
+        this.enc = enc;
+        this.mac = mac;
+        this.encKeySpec = new SecretKeySpec(enc, "AES");
+        this.macKeySpec = new SecretKeySpec(mac, "HmacSHA256");
+    }
+
+    public byte[] enc() {
+        return enc;
+    }
+
+    public byte[] mac() {
+        return mac;
+    }
+
+    SecretKeySpec encKeySpec() {
+        return encKeySpec;
+    }
+
+    SecretKeySpec macKeySpec() {
+        return macKeySpec;
+    }
 }
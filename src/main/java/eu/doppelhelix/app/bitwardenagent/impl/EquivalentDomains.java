@@ -0,0 +1,112 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.http.DomainsData;
+import eu.doppelhelix.app.bitwardenagent.http.GlobalEquivalentDomain;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Groups of domains, that are treated as the same site when matching URLs.
+ * Groups sharing a domain are merged, as equivalence is transitive. Each
+ * domain is mapped to a representative domain of its merged group, so that
+ * the group of a domain is found with a single lookup.
+ */
+public final class EquivalentDomains {
+
+    public static final EquivalentDomains NONE = new EquivalentDomains(Map.of());
+
+    private final Map<String, String> groupByDomain;
+
+    private EquivalentDomains(Map<String, String> groupByDomain) {
+        this.groupByDomain = groupByDomain;
+    }
+
+    /**
+     * @param domains domain rules of the sync data, may be {@code null} if
+     *                they were not fetched
+     */
+    public static EquivalentDomains of(DomainsData domains) {
+        if (domains == null) {
+            return NONE;
+        }
+        // Union-find over the domains, the parent of a root is the root
+        // itself
+        Map<String, String> parents = new HashMap<>();
+        if (domains.equivalentDomains() != null) {
+            for (List<String> group : domains.equivalentDomains()) {
+                addGroup(parents, group);
+            }
+        }
+        if (domains.globalEquivalentDomains() != null) {
+            for (GlobalEquivalentDomain group : domains.globalEquivalentDomains()) {
+                if (!group.excluded()) {
+                    addGroup(parents, group.domains());
+                }
+            }
+        }
+        Map<String, String> groupByDomain = new HashMap<>();
+        for (String domain : parents.keySet()) {
+            groupByDomain.put(domain, find(parents, domain));
+        }
+        return groupByDomain.isEmpty() ? NONE : new EquivalentDomains(Map.copyOf(groupByDomain));
+    }
+
+    private static void addGroup(Map<String, String> parents, List<String> group) {
+        if (group == null) {
+            return;
+        }
+        String groupRoot = null;
+        for (String domain : group) {
+            if (domain == null) {
+                continue;
+            }
+            String root = find(parents, domain.toLowerCase(Locale.ROOT));
+            if (groupRoot == null) {
+                groupRoot = root;
+            } else if (!root.equals(groupRoot)) {
+                // Merge into the group of the first domain
+                parents.put(root, groupRoot);
+            }
+        }
+    }
+
+    /**
+     * @return the root of the domain, an unknown domain is added as root.
+     *         Paths are compressed while searching.
+     */
+    private static String find(Map<String, String> parents, String domain) {
+        String root = parents.putIfAbsent(domain, domain);
+        if (root == null || root.equals(domain)) {
+            return domain;
+        }
+        root = find(parents, root);
+        parents.put(domain, root);
+        return root;
+    }
+
+    /**
+     * @param domain registrable domain
+     * @return the key of the group the domain belongs to or the domain itself
+     *         if it is not part of a group
+     */
+    public String groupOf(String domain) {
+        return groupByDomain.getOrDefault(domain, domain);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.Logger.Level.ERROR;
+
+/**
+ * Holder for a value, that is only decrypted when it is first accessed.
+ *
+ * <p>The plaintext is kept after the first access. If decryption fails, the
+ * failure is logged once and remembered, every access then reports it as
+ * {@link DecryptionFailedException}.</p>
+ */
+final class LazyDecryptedString {
+
+    private static final System.Logger LOG = System.getLogger(LazyDecryptedString.class.getName());
+
+    private static final LazyDecryptedString NULL = new LazyDecryptedString(null, null, null);
+
+    private EncryptionKey key;
+    private EncString encrypted;
+    private String plain;
+    private DecryptionFailedException failure;
+    // Values are read from virtual threads, a ReentrantLock does not pin the
+    // carrier thread while decrypting
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private LazyDecryptedString(EncryptionKey key, EncString encrypted, String plain) {
+        this.key = key;
+        this.encrypted = encrypted;
+        this.plain = plain;
+    }
+
+    public static LazyDecryptedString ofPlain(String plain) {
+        if (plain == null) {
+            return NULL;
+        }
+        return new LazyDecryptedString(null, null, plain);
+    }
+
+    public static LazyDecryptedString ofEncrypted(EncryptionKey key, EncString encrypted) {
+        if (encrypted == null) {
+            return NULL;
+        }
+        return new LazyDecryptedString(key, encrypted, null);
+    }
+
+    public String get() {
+        lock.lock();
+        try {
+            if (encrypted != null) {
+                try {
+                    plain = UtilCryto.decryptString(key, encrypted);
+                } catch (GeneralSecurityException | RuntimeException ex) {
+                    LOG.log(ERROR, "Failed to decrypt value", ex);
+                    failure = new DecryptionFailedException("Failed to decrypt value", ex);
+                }
+                key = null;
+                encrypted = null;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return plain;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
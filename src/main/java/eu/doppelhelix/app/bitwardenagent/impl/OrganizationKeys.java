@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keys of the organizations the user is a member of.
+ *
+ * <p>The organization keys are wrapped with the RSA key of the user. They are
+ * only unwrapped when an organization key is requested for the first time.
+ * Unwrapped keys are placed into a cache keyed by the wrapped key, that is
+ * shared between syncs, so unchanged keys are not unwrapped again. Parallel
+ * requests for the same key wait for a single unwrap.</p>
+ */
+final class OrganizationKeys {
+
+    private final PrivateKey userPrivateKey;
+    private final Map<String, EncString> wrappedKeys;
+    private final Map<EncString, EncryptionKey> unwrappedKeyCache;
+    private final KeyUnwrapper keyUnwrapper;
+
+    /**
+     * @param unwrappedKeyCache cache of the unwrapped keys, must support
+     *                          atomic {@link Map#computeIfAbsent} if keys
+     *                          are requested in parallel
+     */
+    OrganizationKeys(PrivateKey userPrivateKey, Map<String, EncString> wrappedKeys, Map<EncString, EncryptionKey> unwrappedKeyCache) {
+        this(userPrivateKey, wrappedKeys, unwrappedKeyCache, UtilCryto::decryptKey);
+    }
+
+    OrganizationKeys(PrivateKey userPrivateKey, Map<String, EncString> wrappedKeys, Map<EncString, EncryptionKey> unwrappedKeyCache, KeyUnwrapper keyUnwrapper) {
+        this.userPrivateKey = userPrivateKey;
+        this.wrappedKeys = Map.copyOf(wrappedKeys);
+        this.unwrappedKeyCache = unwrappedKeyCache;
+        this.keyUnwrapper = keyUnwrapper;
+    }
+
+    /**
+     * @param organizationId id of the organization
+     * @return key of the organization or {@code null} if the user is not a
+     *         member of the organization
+     * @throws GeneralSecurityException if the key could not be unwrapped
+     */
+    public EncryptionKey get(String organizationId) throws GeneralSecurityException {
+        EncString wrappedKey = organizationId == null ? null : wrappedKeys.get(organizationId);
+        if (wrappedKey == null) {
+            return null;
+        }
+        try {
+            return unwrappedKeyCache.computeIfAbsent(wrappedKey, wk -> {
+                try {
+                    return keyUnwrapper.unwrap(userPrivateKey, wk);
+                } catch (GeneralSecurityException ex) {
+                    throw new UnwrapFailedException(ex);
+                }
+            });
+        } catch (UnwrapFailedException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Check whether the key for an organization is the same in both instances.
+     * This compares the wrapped keys and does not unwrap them.
+     */
+    public boolean hasSameKey(String organizationId, OrganizationKeys other) {
+        if (other == null || userPrivateKey != other.userPrivateKey) {
+            return false;
+        }
+        if (organizationId == null) {
+            return true;
+        }
+        return Objects.equals(wrappedKeys.get(organizationId), other.wrappedKeys.get(organizationId));
+    }
+
+    /**
+     * Unwraps an organization key with the private key of the user.
+     */
+    @FunctionalInterface
+    interface KeyUnwrapper {
+        EncryptionKey unwrap(PrivateKey userPrivateKey, EncString wrappedKey) throws GeneralSecurityException;
+    }
+
+    /**
+     * Carries the checked exception out of {@link Map#computeIfAbsent}.
+     */
+    private static final class UnwrapFailedException extends RuntimeException {
+
+        UnwrapFailedException(GeneralSecurityException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized GeneralSecurityException getCause() {
+            return (GeneralSecurityException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.IDN;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Determines the registrable domain of a host based on the
+ * <a href="https://publicsuffix.org/">public suffix list</a>.
+ *
+ * <p>The bundled list includes the private section, so tenants of shared
+ * hosting domains (e.g. {@code github.io} or {@code blogspot.com}) are
+ * different sites. The list is loaded on first use.</p>
+ */
+final class PublicSuffixList {
+
+    private static final String RESOURCE = "public_suffix_list.dat";
+
+    private static final class Holder {
+        static final PublicSuffixList INSTANCE = load();
+    }
+
+    private final Set<String> rules = new HashSet<>();
+    // Wildcard rules ("*.ck") are stored without the wildcard label
+    private final Set<String> wildcards = new HashSet<>();
+    // Exception rules ("!www.ck") are stored without the exclamation mark
+    private final Set<String> exceptions = new HashSet<>();
+
+    private PublicSuffixList() {
+    }
+
+    static PublicSuffixList getDefault() {
+        return Holder.INSTANCE;
+    }
+
+    private static PublicSuffixList load() {
+        try (InputStream is = PublicSuffixList.class.getResourceAsStream(RESOURCE)) {
+            if (is == null) {
+                throw new IllegalStateException("Public suffix list not found: " + RESOURCE);
+            }
+            return parse(new BufferedReader(new InputStreamReader(is, UTF_8)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static PublicSuffixList parse(BufferedReader reader) throws IOException {
+        PublicSuffixList list = new PublicSuffixList();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("//")) {
+                continue;
+            }
+            // Only the first token of a line is the rule
+            int whitespace = line.indexOf(' ');
+            String rule = whitespace < 0 ? line : line.substring(0, whitespace);
+            if (rule.startsWith("!")) {
+                list.exceptions.add(toAscii(rule.substring(1)));
+            } else if (rule.startsWith("*.")) {
+                list.wildcards.add(toAscii(rule.substring(2)));
+            } else {
+                list.rules.add(toAscii(rule));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Hosts are compared in their ASCII form, as that is what {@link java.net.URI}
+     * reports for internationalized domain names.
+     */
+    private static String toAscii(String domain) {
+        try {
+            return IDN.toASCII(domain).toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException ex) {
+            return domain.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @param host lower case host name without trailing dot
+     * @return the public suffix of the host plus one label or the host
+     *         itself, if it is a public suffix
+     */
+    String registrableDomain(String host) {
+        // Suffixes are checked from the longest to the shortest, the first
+        // matching rule is the prevailing one
+        int previous = -1;
+        int start = 0;
+        while (true) {
+            String suffix = host.substring(start);
+            if (exceptions.contains(suffix)) {
+                return suffix;
+            }
+            int next = host.indexOf('.', start);
+            if (rules.contains(suffix)
+                    || (next >= 0 && wildcards.contains(host.substring(next + 1)))) {
+                return previous < 0 ? host : host.substring(previous);
+            }
+            if (next < 0) {
+                // Default rule "*", the last label is the public suffix
+                return previous < 0 ? host : host.substring(previous);
+            }
+            previous = start;
+            start = next + 1;
+        }
+    }
+}
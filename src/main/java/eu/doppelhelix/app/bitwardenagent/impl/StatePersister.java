@@ -0,0 +1,200 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.Configuration;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes the {@link ClientState} in the background using the
+ * {@link BinaryStateFormat}.
+ *
+ * <p>Calls to {@link #store(ClientState)} in short succession are coalesced,
+ * only the latest state is written. The state is written to a temporary file,
+ * that is synced to disk and then moved over the target, so a crash never
+ * leaves a partially written file behind. Pending state is written when the
+ * persister is closed or the JVM shuts down. If writing fails, the state stays
+ * pending and writing it is retried, unless a newer state replaced it.</p>
+ */
+final class StatePersister implements AutoCloseable {
+
+    private static final System.Logger LOG = System.getLogger(StatePersister.class.getName());
+
+    private static final long DEBOUNCE_DELAY = 500;
+    private static final long RETRY_DELAY = 10_000;
+
+    private final Path target;
+    private final long debounceDelay;
+    private final long retryDelay;
+    private final AtomicReference<ClientState> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "StatePersister");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Thread shutdownHook = new Thread(() -> flush(), "StatePersister-Shutdown");
+    private volatile boolean closed;
+
+    StatePersister(Path target) {
+        this(target, DEBOUNCE_DELAY);
+    }
+
+    StatePersister(Path target, long debounceDelay) {
+        this(target, debounceDelay, RETRY_DELAY);
+    }
+
+    StatePersister(Path target, long debounceDelay, long retryDelay) {
+        this.target = target;
+        this.debounceDelay = debounceDelay;
+        this.retryDelay = retryDelay;
+        // A write in progress is finished on close, a scheduled one is
+        // replaced by the flush of close
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Schedule the state to be written. The state must not be modified after
+     * it was passed in. After the persister was closed, the state is written
+     * on the calling thread.
+     */
+    void store(ClientState state) {
+        pending.set(state);
+        if (closed) {
+            flush();
+            return;
+        }
+        schedule(debounceDelay);
+    }
+
+    private void schedule(long delay) {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.schedule(() -> {
+                // Cleared before the flush, a state stored while it runs is
+                // then either written by it or schedules the next run
+                scheduled.set(false);
+                if (!flush() && pending.get() != null) {
+                    // Writing failed, do not wait for the next store
+                    schedule(retryDelay);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // Closed concurrently, close flushes the state
+            scheduled.set(false);
+        }
+    }
+
+    /**
+     * Write the pending state, stop the background writer and unregister the
+     * shutdown hook.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        flush();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ex) {
+            // The JVM is already shutting down, the hook flushes again
+        }
+    }
+
+    /**
+     * Write the pending state, if there is one, on the calling thread.
+     *
+     * @return {@code true} if a state was written
+     */
+    boolean flush() {
+        writeLock.lock();
+        try {
+            ClientState state = pending.getAndSet(null);
+            if (state == null) {
+                return false;
+            }
+            try {
+                write(state);
+                return true;
+            } catch (IOException | RuntimeException ex) {
+                LOG.log(Level.ERROR, (String) null, ex);
+                // Keep the state for the next attempt, unless a newer one
+                // was stored in the meantime
+                pending.compareAndSet(null, state);
+                return false;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void write(ClientState state) throws IOException {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream(64 * 1024);
+        BinaryStateFormat.write(state, serialized, Configuration.getConfiguration().isCompressState());
+        byte[] data = serialized.toByteArray();
+        Path directory = target.getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temporaryFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+        syncDirectory(directory);
+    }
+
+    /**
+     * Make the rename durable. Not all platforms allow to open a directory,
+     * there the rename is left to the file system.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            LOG.log(Level.DEBUG, "Failed to sync directory", ex);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.http.CipherData;
+import eu.doppelhelix.app.bitwardenagent.http.Collection;
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
+import eu.doppelhelix.app.bitwardenagent.http.FieldData;
+import eu.doppelhelix.app.bitwardenagent.http.Folder;
+import eu.doppelhelix.app.bitwardenagent.http.PasswordHistoryEntry;
+import eu.doppelhelix.app.bitwardenagent.http.SyncData;
+import eu.doppelhelix.app.bitwardenagent.http.UriData;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static java.lang.System.Logger.Level.ERROR;
+
+/**
+ * Turns the encrypted {@link SyncData} into a {@link DecryptedSyncData}.
+ *
+ * <p>The result of the last run is remembered. When the next run is done with
+ * the same keys, entries that did not change are carried over from the
+ * previous result instead of being decrypted again. Ciphers and folders are
+ * considered unchanged if id and revision date match, collections carry no
+ * revision date and are compared by their encrypted data.</p>
+ */
+class SyncDataDecryptor {
+
+    private static final System.Logger LOG = System.getLogger(SyncDataDecryptor.class.getName());
+
+    private final NameDecryptor nameDecryptor;
+
+    private SyncData previousSyncData;
+    private DecryptedSyncData previousResult;
+    private EncryptionKey previousUserKey;
+    private OrganizationKeys previousOrganizationKeys;
+
+    SyncDataDecryptor() {
+        this(UtilCryto::decryptString);
+    }
+
+    SyncDataDecryptor(NameDecryptor nameDecryptor) {
+        this.nameDecryptor = nameDecryptor;
+    }
+
+    public synchronized DecryptedSyncData decrypt(SyncData syncData, EncryptionKey userKey, OrganizationKeys organizationKeys) {
+        Map<String, CipherData> previousCiphers = Map.of();
+        Map<String, Folder> previousFolders = Map.of();
+        Map<String, Collection> previousCollections = Map.of();
+        boolean previousUsable = previousResult != null && sameKey(previousUserKey, userKey);
+        if (previousUsable) {
+            previousCiphers = previousSyncData.ciphers().stream().collect(Collectors.toMap(cd -> cd.id(), cd -> cd, (a, b) -> a));
+            previousFolders = previousSyncData.folders().stream().collect(Collectors.toMap(f -> f.id(), f -> f, (a, b) -> a));
+            previousCollections = previousSyncData.collections().stream().collect(Collectors.toMap(c -> c.id(), c -> c, (a, b) -> a));
+        }
+
+        DecryptedSyncData result = new DecryptedSyncData();
+        result.setId(syncData.profile().id());
+        result.setEmail(syncData.profile().email());
+        result.setName(syncData.profile().name());
+        syncData.profile().organizations().forEach(od -> {
+            result.getOrganizationNames().put(od.id(), od.name());
+        });
+        if (previousResult != null && Objects.equals(previousSyncData.domains(), syncData.domains())) {
+            result.setEquivalentDomains(previousResult.getEquivalentDomains());
+        } else {
+            result.setEquivalentDomains(EquivalentDomains.of(syncData.domains()));
+        }
+        // Folder and collection names are decrypted once and shared by the
+        // name maps, the folder/collection lists and the cipher labels
+        for (Collection c : syncData.collections()) {
+            try {
+                String name = null;
+                if (isUnchanged(c, previousCollections.get(c.id()), organizationKeys)) {
+                    name = previousResult.getCollectionNames().get(c.id());
+                }
+                if (name == null) {
+                    name = nameDecryptor.decrypt(organizationKeys.get(c.organizationId()), c.name());
+                }
+                DecryptedCollection dc = new DecryptedCollection();
+                dc.setId(c.id());
+                dc.setOrganizationId(c.organizationId());
+                dc.setName(name);
+                dc.setHidePasswords(c.hidePasswords());
+                dc.setManage(c.manage());
+                result.getCollections().add(dc);
+                result.getCollectionNames().put(c.id(), name);
+            } catch (Exception ex) {
+                LOG.log(ERROR, (String) null, ex);
+            }
+        }
+        for (Folder f : syncData.folders()) {
+            try {
+                String name = null;
+                if (isUnchanged(f, previousFolders.get(f.id()))) {
+                    name = previousResult.getFolderNames().get(f.id());
+                }
+                if (name == null) {
+                    name = nameDecryptor.decrypt(userKey, f.name());
+                }
+                DecryptedFolder df = new DecryptedFolder();
+                df.setId(f.id());
+                df.setName(name);
+                df.setRevisionDate(f.revisionDate());
+                result.getFolder().add(df);
+                result.getFolderNames().put(f.id(), name);
+            } catch (Exception ex) {
+                LOG.log(ERROR, (String) null, ex);
+            }
+        }
+        // Ciphers are independent of each other and make up the bulk of the
+        // work, so they are decrypted in parallel. The stream is ordered, so
+        // the result keeps the order of the sync data.
+        Map<String, CipherData> previousCipherLookup = previousCiphers;
+        DecryptedSyncData reusableResult = previousUsable ? previousResult : null;
+        syncData.ciphers()
+                .parallelStream()
+                .map(cd -> {
+                    try {
+                        DecryptedCipherData previousDcd = reusableResult == null ? null : reusableResult.getCipher(cd.id());
+                        if (previousDcd != null
+                                && isUnchanged(cd, previousCipherLookup.get(cd.id()), organizationKeys)
+                                && hasSameLabels(previousDcd, cd, result)) {
+                            return previousDcd;
+                        } else {
+                            return decryptCipher(cd, result, userKey, organizationKeys);
+                        }
+                    } catch (Exception ex) {
+                        LOG.log(ERROR, (String) null, ex);
+                        return null;
+                    }
+                })
+                .filter(dcd -> dcd != null)
+                .forEachOrdered(dcd -> result.getCiphers().add(dcd));
+
+        result.seal();
+
+        previousSyncData = syncData;
+        previousResult = result;
+        previousUserKey = userKey;
+        previousOrganizationKeys = organizationKeys;
+
+        return result;
+    }
+
+    /**
+     * Forget the remembered result, so that no decrypted data is retained.
+     */
+    public synchronized void reset() {
+        previousSyncData = null;
+        previousResult = null;
+        previousUserKey = null;
+        previousOrganizationKeys = null;
+    }
+
+    private boolean isUnchanged(CipherData cd, CipherData previousCd, OrganizationKeys organizationKeys) {
+        return previousCd != null
+                && Objects.equals(cd.revisionDate(), previousCd.revisionDate())
+                && Objects.equals(cd.organizationId(), previousCd.organizationId())
+                && (cd.organizationId() == null
+                    || organizationKeys.hasSameKey(cd.organizationId(), previousOrganizationKeys));
+    }
+
+    private boolean isUnchanged(Folder f, Folder previousFolder) {
+        return previousFolder != null
+                && Objects.equals(f.revisionDate(), previousFolder.revisionDate());
+    }
+
+    private boolean isUnchanged(Collection c, Collection previousCollection, OrganizationKeys organizationKeys) {
+        return c.equals(previousCollection)
+                && organizationKeys.hasSameKey(c.organizationId(), previousOrganizationKeys);
+    }
+
+    /**
+     * Folder, collection and organization names are copied into the cipher. A
+     * rename of these does not touch the revision date of the cipher, so they
+     * need to be checked separately.
+     */
+    private boolean hasSameLabels(DecryptedCipherData previousDcd, CipherData cd, DecryptedSyncData result) {
+        return Objects.equals(previousDcd.getFolderId(), cd.folderId())
+                && Objects.equals(previousDcd.getFolder(), cd.folderId() == null ? null : result.getFolderNames().get(cd.folderId()))
+                && Objects.equals(previousDcd.getOrganization(), cd.organizationId() == null ? null : result.getOrganizationNames().get(cd.organizationId()))
+                && Objects.equals(previousDcd.getCollectionIds(), cd.collectionIds() == null ? List.of() : cd.collectionIds())
+                && Objects.equals(previousDcd.getCollections(), collectionNames(cd, result));
+    }
+
+    private static List<String> collectionNames(CipherData cd, DecryptedSyncData result) {
+        if (cd.collectionIds() == null) {
+            return List.of();
+        }
+        return cd.collectionIds()
+                .stream()
+                .map(ci -> result.getCollectionNames().get(ci))
+                .filter(cn -> cn != null)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Decrypt the data of a cipher. Only the values shown in the entry list
+     * are decrypted directly, secrets (passwords, notes, private keys, field
+     * values and the password history) are decrypted on first access.
+     */
+    private static DecryptedCipherData decryptCipher(CipherData cd, DecryptedSyncData result, EncryptionKey userKey, OrganizationKeys organizationKeys) throws GeneralSecurityException {
+        EncryptionKey ek = cd.organizationId() == null ? userKey : organizationKeys.get(cd.organizationId());
+        DecryptionBatch batch = new DecryptionBatch();
+        DecryptedCipherData dcd = new DecryptedCipherData();
+        batch.add(cd.name(), dcd::setName);
+        dcd.setId(cd.id());
+        dcd.setOrganizationId(cd.organizationId());
+        dcd.setFolderId(cd.folderId());
+        if (dcd.getFolderId() != null && result.getFolderNames().containsKey(dcd.getFolderId())) {
+            dcd.setFolder(result.getFolderNames().get(dcd.getFolderId()));
+        }
+        if (cd.collectionIds() != null) {
+            dcd.getCollectionIds().addAll(cd.collectionIds());
+            dcd.getCollections().addAll(collectionNames(cd, result));
+        }
+        if (cd.organizationId() != null) {
+            dcd.setOrganization(result.getOrganizationNames().get(cd.organizationId()));
+        }
+        if (cd.login() != null) {
+            DecryptedLoginData dld = new DecryptedLoginData();
+            dld.setEncryptedPassword(ek, cd.login().password());
+            dld.setEncryptedTotp(ek, cd.login().totp());
+            batch.add(cd.login().uri(), dld::setUri);
+            batch.add(cd.login().username(), dld::setUsername);
+            if (cd.login().uris() != null) {
+                for (UriData ud : cd.login().uris()) {
+                    DecryptedUriData dud = new DecryptedUriData();
+                    dud.setMatch(ud.match());
+                    batch.add(ud.uri(), dud::setUri);
+                    batch.add(ud.uriChecksum(), dud::setUriChecksum);
+                    dld.getUriData().add(dud);
+                }
+            }
+            dcd.setLogin(dld);
+        }
+        if (cd.sshKey() != null) {
+            DecryptedSshKey dsk = new DecryptedSshKey();
+            batch.add(cd.sshKey().keyFingerprint(), dsk::setKeyFingerprint);
+            dsk.setEncryptedPrivateKey(ek, cd.sshKey().privateKey());
+            dsk.setEncryptedPublicKey(ek, cd.sshKey().publicKey());
+            dcd.setSshKey(dsk);
+        }
+        if (cd.card() != null) {
+            DecryptedCardData decryptedCardData = new DecryptedCardData();
+            batch.add(cd.card().brand(), decryptedCardData::setBrand);
+            batch.add(cd.card().cardholderName(), decryptedCardData::setCardholderName);
+            batch.add(cd.card().number(), decryptedCardData::setNumber);
+            batch.add(cd.card().expMonth(), decryptedCardData::setExpMonth);
+            batch.add(cd.card().expYear(), decryptedCardData::setExpYear);
+            batch.add(cd.card().code(), decryptedCardData::setCode);
+            dcd.setCard(decryptedCardData);
+        }
+        if (cd.identity() != null) {
+            DecryptedIdentityData decryptedIdentityData = new DecryptedIdentityData();
+            batch.add(cd.identity().title(), decryptedIdentityData::setTitle);
+            batch.add(cd.identity().firstName(), decryptedIdentityData::setFirstName);
+            batch.add(cd.identity().middleName(), decryptedIdentityData::setMiddleName);
+            batch.add(cd.identity().lastName(), decryptedIdentityData::setLastName);
+            batch.add(cd.identity().address1(), decryptedIdentityData::setAddress1);
+            batch.add(cd.identity().address2(), decryptedIdentityData::setAddress2);
+            batch.add(cd.identity().address3(), decryptedIdentityData::setAddress3);
+            batch.add(cd.identity().city(), decryptedIdentityData::setCity);
+            batch.add(cd.identity().state(), decryptedIdentityData::setState);
+            batch.add(cd.identity().postalCode(), decryptedIdentityData::setPostalCode);
+            batch.add(cd.identity().country(), decryptedIdentityData::setCountry);
+            batch.add(cd.identity().company(), decryptedIdentityData::setCompany);
+            batch.add(cd.identity().email(), decryptedIdentityData::setEmail);
+            batch.add(cd.identity().phone(), decryptedIdentityData::setPhone);
+            batch.add(cd.identity().ssn(), decryptedIdentityData::setSsn);
+            batch.add(cd.identity().username(), decryptedIdentityData::setUsername);
+            batch.add(cd.identity().passportNumber(), decryptedIdentityData::setPassportNumber);
+            batch.add(cd.identity().licenseNumber(), decryptedIdentityData::setLicenseNumber);
+            dcd.setIdentity(decryptedIdentityData);
+        }
+        dcd.setEncryptedNotes(ek, cd.notes());
+        if (cd.fields() != null) {
+            for (FieldData fd : cd.fields()) {
+                DecryptedFieldData dfd = new DecryptedFieldData();
+                dfd.setLinkedId(fd.linkedId());
+                dfd.setType(fd.type());
+                batch.add(fd.name(), dfd::setName);
+                dfd.setEncryptedValue(ek, fd.value());
+                dcd.getFields().add(dfd);
+            }
+        }
+        if (cd.passwordHistory() != null) {
+            for (PasswordHistoryEntry phe : cd.passwordHistory()) {
+                DecryptedPasswordHistoryEntry dphe = new DecryptedPasswordHistoryEntry();
+                dphe.setLastUsedDate(phe.lastUsedDate());
+                dphe.setEncryptedPassword(ek, phe.password());
+                dcd.getPasswordHistory().add(dphe);
+            }
+        }
+        dcd.setArchivedDate(cd.archivedDate());
+        dcd.setCreationDate(cd.creationDate());
+        dcd.setDeletedDate(cd.deletedDate());
+        dcd.setRevisionDate(cd.revisionDate());
+        batch.decrypt(ek);
+        return dcd;
+    }
+
+    private static boolean sameKey(EncryptionKey key1, EncryptionKey key2) {
+        if (key1 == key2) {
+            return true;
+        }
+        return key1 != null && key2 != null
+                && Arrays.equals(key1.enc(), key2.enc())
+                && Arrays.equals(key1.mac(), key2.mac());
+    }
+
+    /**
+     * Decrypts folder and collection names.
+     */
+    @FunctionalInterface
+    interface NameDecryptor {
+        String decrypt(EncryptionKey encryptionKey, EncString name) throws GeneralSecurityException;
+    }
+
+    /**
+     * Collects the values of a cipher, that are decrypted directly, so that
+     * they can be decrypted in one call to
+     * {@link UtilCryto#decryptStrings(EncryptionKey, List)}.
+     */
+    private static final class DecryptionBatch {
+
+        private final List<EncString> payloads = new ArrayList<>();
+        private final List<Consumer<String>> targets = new ArrayList<>();
+
+        void add(EncString payload, Consumer<String> target) {
+            payloads.add(payload);
+            targets.add(target);
+        }
+
+        void decrypt(EncryptionKey encryptionKey) throws GeneralSecurityException {
+            List<DecryptionResult> results = UtilCryto.decryptStrings(encryptionKey, payloads);
+            for (int i = 0; i < results.size(); i++) {
+                targets.get(i).accept(results.get(i).getOrThrow());
+            }
+        }
+    }
+}
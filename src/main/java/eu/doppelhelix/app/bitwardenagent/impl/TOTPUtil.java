@@ -15,54 +15,204 @@
  */
 package eu.doppelhelix.app.bitwardenagent.impl;
 
-import com.amdelamar.jotp.OTP;
-import com.amdelamar.jotp.type.Type;
-import java.io.IOException;
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
+import java.security.GeneralSecurityException;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
+/**
+ * Calculates TOTP tokens (RFC 6238) from {@code otpauth://} URLs or plain
+ * base32 encoded secrets.
+ *
+ * <p>A {@link TOTPGenerator} keeps the parsed parameters and the last token,
+ * so repeated calculations within one period do not compute a HMAC. Callers
+ * keep the generator with the data it was parsed from (see
+ * {@link DecryptedLoginData#getTotpToken()}), so the secret is dropped
+ * together with the vault snapshot.</p>
+ */
 public class TOTPUtil {
     private static final System.Logger LOG = System.getLogger(TOTPUtil.class.getName());
 
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+    private static final String BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+
     public static String calculateTOTP(String totpUrl) throws TOTPCalculationFailedException {
+        return calculateTOTPToken(totpUrl, System.currentTimeMillis()).value();
+    }
+
+    static String calculateTOTP(String totpUrl, long timeMillis) throws TOTPCalculationFailedException {
+        return calculateTOTPToken(totpUrl, timeMillis).value();
+    }
+
+    /**
+     * @return the current token together with the end of its validity
+     */
+    public static TOTPToken calculateTOTPToken(String totpUrl) throws TOTPCalculationFailedException {
+        return calculateTOTPToken(totpUrl, System.currentTimeMillis());
+    }
+
+    static TOTPToken calculateTOTPToken(String totpUrl, long timeMillis) throws TOTPCalculationFailedException {
+        return createGenerator(totpUrl).token(timeMillis);
+    }
+
+    /**
+     * @param totpUrl {@code otpauth://} URL or base32 encoded secret
+     * @return generator for the tokens of the URL
+     */
+    public static TOTPGenerator createGenerator(String totpUrl) throws TOTPCalculationFailedException {
         try {
-            // TODO implement variants with algorithm=SHA256 and algorithm=SHA512
-            Map<String, String> parameters = extractSecretFromOtpUrl(totpUrl);
-            String hexTime = OTP.timeInHex(
-                    System.currentTimeMillis(),
-                    Integer.parseInt(parameters.getOrDefault("period", "30"))
-            );
-            return OTP.create(
-                    parameters.getOrDefault("secret", ""),
-                    hexTime,
-                    Integer.parseInt(parameters.getOrDefault("digits", "6")),
-                    Type.TOTP);
-        } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | RuntimeException ex) {
+            return parse(totpUrl);
+        } catch (RuntimeException ex) {
             throw new TOTPCalculationFailedException(ex);
         }
     }
 
-    private static Map<String,String> extractSecretFromOtpUrl(String input) {
-        if(input == null || input.isBlank()) {
-            return null;
+    private static TOTPGenerator parse(String totpUrl) {
+        if (totpUrl == null || totpUrl.isBlank()) {
+            throw new IllegalArgumentException("No TOTP secret");
+        }
+        String value = totpUrl.trim();
+        Map<String, String> parameters = value.regionMatches(true, 0, "otpauth://", 0, 10)
+                ? extractParametersFromOtpUrl(value)
+                : Map.of("secret", value);
+        String algorithm = switch (parameters.getOrDefault("algorithm", "SHA1").toUpperCase(Locale.ROOT)) {
+            case "SHA1" -> "HmacSHA1";
+            case "SHA256" -> "HmacSHA256";
+            case "SHA512" -> "HmacSHA512";
+            default -> throw new IllegalArgumentException("Unsupported algorithm: " + parameters.get("algorithm"));
+        };
+        int digits = Integer.parseInt(parameters.getOrDefault("digits", "6"));
+        if (digits < 1 || digits >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported number of digits: " + digits);
+        }
+        int period = Integer.parseInt(parameters.getOrDefault("period", "30"));
+        if (period < 1) {
+            throw new IllegalArgumentException("Invalid period: " + period);
         }
+        return new TOTPGenerator(decodeBase32(parameters.getOrDefault("secret", "")), algorithm, digits, period);
+    }
+
+    private static Map<String, String> extractParametersFromOtpUrl(String input) {
         URI uri = URI.create(input);
-        return Arrays.stream(uri.getRawQuery().split("&"))
-                .filter(queryPart -> queryPart.contains("="))
-                .map(queryPart -> {
-                    String[] queryParts = queryPart.split("=", 2);
-                    String key = URLDecoder.decode(queryParts[0], StandardCharsets.UTF_8).toLowerCase();
-                    String value = URLDecoder.decode(queryParts[1], StandardCharsets.UTF_8);
-                    return new HashMap.SimpleEntry<>(key, value);
-                })
-                .collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue()));
+        Map<String, String> parameters = new HashMap<>();
+        if (uri.getRawQuery() == null) {
+            return parameters;
+        }
+        for (String queryPart : uri.getRawQuery().split("&")) {
+            String[] queryParts = queryPart.split("=", 2);
+            if (queryParts.length == 2) {
+                String key = URLDecoder.decode(queryParts[0], StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+                String value = URLDecoder.decode(queryParts[1], StandardCharsets.UTF_8);
+                parameters.put(key, value);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Decode base32 (RFC 4648). Case, whitespace and padding are ignored.
+     */
+    static byte[] decodeBase32(String input) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(input.length() * 5 / 8);
+        int buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = Character.toUpperCase(input.charAt(i));
+            if (c == '=' || c == '-' || Character.isWhitespace(c)) {
+                continue;
+            }
+            int value = BASE32_ALPHABET.indexOf(c);
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid base32 character: " + c);
+            }
+            buffer = (buffer << 5) | value;
+            bits += 5;
+            if (bits >= 8) {
+                bits -= 8;
+                result.write(buffer >> bits);
+                buffer &= (1 << bits) - 1;
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Calculates the tokens of one secret. The last token is kept, so it is
+     * only calculated once per period.
+     */
+    public static final class TOTPGenerator {
+
+        private final SecretKeySpec key;
+        private final String algorithm;
+        private final int digits;
+        private final int period;
+        private final long periodMillis;
+        private volatile TOTPToken lastToken;
+
+        private TOTPGenerator(byte[] secret, String algorithm, int digits, int period) {
+            this.key = new SecretKeySpec(secret, algorithm);
+            this.algorithm = algorithm;
+            this.digits = digits;
+            this.period = period;
+            this.periodMillis = period * 1000L;
+        }
+
+        /**
+         * @return the current token together with the end of its validity
+         */
+        public TOTPToken token() throws TOTPCalculationFailedException {
+            return token(System.currentTimeMillis());
+        }
+
+        TOTPToken token(long timeMillis) throws TOTPCalculationFailedException {
+            long step = Math.floorDiv(timeMillis, periodMillis);
+            TOTPToken cached = lastToken;
+            if (cached != null && cached.validUntil() == (step + 1) * periodMillis) {
+                return cached;
+            }
+            try {
+                TOTPToken token = new TOTPToken(generate(step), (step + 1) * periodMillis, period);
+                lastToken = token;
+                return token;
+            } catch (GeneralSecurityException | RuntimeException ex) {
+                throw new TOTPCalculationFailedException(ex);
+            }
+        }
+
+        private String generate(long step) throws GeneralSecurityException {
+            // The HMAC is calculated at most once per period, so a new Mac
+            // is cheaper than keeping one per thread
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(key);
+            byte[] hash = mac.doFinal(ByteBuffer.allocate(Long.BYTES).putLong(step).array());
+            int offset = hash[hash.length - 1] & 0xf;
+            int binary = ((hash[offset] & 0x7f) << 24)
+                    | ((hash[offset + 1] & 0xff) << 16)
+                    | ((hash[offset + 2] & 0xff) << 8)
+                    | (hash[offset + 3] & 0xff);
+            StringBuilder token = new StringBuilder(digits);
+            token.append(binary % POWERS_OF_TEN[digits]);
+            while (token.length() < digits) {
+                token.insert(0, '0');
+            }
+            return token.toString();
+        }
+    }
+
+    /**
+     * @param value the token
+     * @param validUntil end of the period of the token in milliseconds since
+     *                   the epoch
+     * @param period length of the period in seconds
+     */
+    public record TOTPToken(String value, long validUntil, int period) {
     }
 
     public static class TOTPCalculationFailedException extends RuntimeException {
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.http.UriMatchType;
+import java.lang.System.Logger.Level;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds the logins, that apply to a URL, following the match type of the
+ * stored URIs.
+ *
+ * <p>Base domain, host and exact matches are looked up in hash indices,
+ * starts with matches in a sorted map of the prefixes, so only prefixes of the
+ * URL are visited. Only regular expressions have to be checked one by one,
+ * the compiled patterns are cached across vault snapshots.</p>
+ *
+ * <p>Base domains are replaced by the group of their
+ * {@link EquivalentDomains equivalent domains}, so a URI matches the URLs of
+ * all domains of its group.</p>
+ *
+ * <p>The base domain is the registrable domain according to the
+ * {@link PublicSuffixList public suffix list}, so tenants of shared hosting
+ * domains like {@code github.io} are not treated as the same site.</p>
+ */
+public final class UriMatcher {
+
+    private static final System.Logger LOG = System.getLogger(UriMatcher.class.getName());
+
+    private static final int MAX_CACHED_PATTERNS = 1024;
+    private static final Map<String, Optional<Pattern>> PATTERN_CACHE = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Optional<Pattern>> eldest) {
+            return size() > MAX_CACHED_PATTERNS;
+        }
+    });
+
+    private final Map<String, List<Entry>> byBaseDomain = new HashMap<>();
+    private final Map<String, List<Entry>> byHost = new HashMap<>();
+    private final NavigableMap<String, List<Entry>> startsWith = new TreeMap<>();
+    private final Map<String, List<Entry>> byExactUri = new HashMap<>();
+    private final List<RegexpEntry> regexps = new ArrayList<>();
+    private final EquivalentDomains equivalentDomains;
+
+    public UriMatcher(List<DecryptedCipherData> ciphers) {
+        this(ciphers, EquivalentDomains.NONE);
+    }
+
+    /**
+     * @param ciphers ciphers to index, deleted ciphers and ciphers without
+     *                login are skipped
+     * @param equivalentDomains groups of domains treated as the same site
+     */
+    public UriMatcher(List<DecryptedCipherData> ciphers, EquivalentDomains equivalentDomains) {
+        this.equivalentDomains = equivalentDomains;
+        for (int i = 0; i < ciphers.size(); i++) {
+            DecryptedCipherData dcd = ciphers.get(i);
+            if (dcd.getDeletedDate() != null || dcd.getLogin() == null) {
+                continue;
+            }
+            for (DecryptedUriData uriData : dcd.getLogin().getUriData()) {
+                if (uriData.getUri() != null && !uriData.getUri().isBlank()) {
+                    index(new Entry(i, dcd, uriData.getUri()), uriData.getMatch());
+                }
+            }
+        }
+    }
+
+    private void index(Entry entry, UriMatchType match) {
+        ParsedUri parsed = ParsedUri.parse(entry.uri());
+        switch (match == null ? UriMatchType.STANDARD : match) {
+            case STANDARD, BASE_DOMAIN -> {
+                if (parsed != null) {
+                    byBaseDomain.computeIfAbsent(equivalentDomains.groupOf(parsed.baseDomain()), k -> new ArrayList<>()).add(entry);
+                }
+            }
+            case HOST -> {
+                if (parsed != null) {
+                    byHost.computeIfAbsent(parsed.hostWithPort(), k -> new ArrayList<>()).add(entry);
+                }
+            }
+            case STARTS_WITH -> startsWith.computeIfAbsent(entry.uri(), k -> new ArrayList<>()).add(entry);
+            case EXACT -> byExactUri.computeIfAbsent(entry.uri(), k -> new ArrayList<>()).add(entry);
+            case REGEXP -> compilePattern(entry.uri())
+                    .ifPresent(pattern -> regexps.add(new RegexpEntry(entry, pattern)));
+            case NEVER -> {
+            }
+        }
+    }
+
+    private static Optional<Pattern> compilePattern(String regexp) {
+        Optional<Pattern> pattern = PATTERN_CACHE.get(regexp);
+        if (pattern == null) {
+            try {
+                pattern = Optional.of(Pattern.compile(regexp, Pattern.CASE_INSENSITIVE));
+            } catch (PatternSyntaxException ex) {
+                LOG.log(Level.WARNING, "Ignoring invalid regular expression: {0}", ex.getMessage());
+                pattern = Optional.empty();
+            }
+            PATTERN_CACHE.put(regexp, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * @param url URL to find the logins for
+     * @return logins with at least one URI matching the URL, in the order of
+     *         the vault
+     */
+    public List<DecryptedCipherData> findMatches(String url) {
+        if (url == null || url.isBlank()) {
+            return List.of();
+        }
+        List<Entry> matches = new ArrayList<>();
+        ParsedUri parsed = ParsedUri.parse(url);
+        if (parsed != null) {
+            matches.addAll(byBaseDomain.getOrDefault(equivalentDomains.groupOf(parsed.baseDomain()), List.of()));
+            matches.addAll(byHost.getOrDefault(parsed.hostWithPort(), List.of()));
+        }
+        addPrefixMatches(url, matches);
+        matches.addAll(byExactUri.getOrDefault(url, List.of()));
+        for (RegexpEntry regexp : regexps) {
+            if (regexp.pattern().matcher(url).find()) {
+                matches.add(regexp.entry());
+            }
+        }
+        matches.sort((e1, e2) -> Integer.compare(e1.order(), e2.order()));
+        Set<DecryptedCipherData> result = new LinkedHashSet<>();
+        for (Entry entry : matches) {
+            result.add(entry.cipher());
+        }
+        return List.copyOf(result);
+    }
+
+    /**
+     * Add the entries, whose URI is a prefix of the URL. All prefixes of the
+     * URL, that are stored, sort at or below the URL and each is a prefix of
+     * every stored key between itself and the URL. So starting at the floor
+     * of the URL, the search can continue below the common prefix of the
+     * floor and the URL.
+     */
+    private void addPrefixMatches(String url, List<Entry> matches) {
+        String key = startsWith.floorKey(url);
+        while (key != null) {
+            int common = 0;
+            int max = Math.min(key.length(), url.length());
+            while (common < max && key.charAt(common) == url.charAt(common)) {
+                common++;
+            }
+            if (common == key.length()) {
+                matches.addAll(startsWith.get(key));
+                if (common == 0) {
+                    break;
+                }
+                common--;
+            }
+            key = startsWith.floorKey(url.substring(0, common));
+        }
+    }
+
+    /**
+     * @return the registrable domain of the host, IP addresses are returned
+     *         unchanged
+     */
+    static String baseDomain(String host) {
+        if (host.startsWith("[") || host.chars().allMatch(c -> c == '.' || (c >= '0' && c <= '9'))) {
+            return host;
+        }
+        return PublicSuffixList.getDefault().registrableDomain(host);
+    }
+
+    private record Entry(int order, DecryptedCipherData cipher, String uri) {
+    }
+
+    private record RegexpEntry(Entry entry, Pattern pattern) {
+    }
+
+    private record ParsedUri(String hostWithPort, String baseDomain) {
+
+        /**
+         * @return the parsed URI or {@code null} if no host could be found.
+         *         URIs without scheme are treated as http URIs.
+         */
+        static ParsedUri parse(String uri) {
+            String candidate = uri.trim();
+            if (!candidate.contains("://")) {
+                candidate = "http://" + candidate;
+            }
+            try {
+                URI parsed = new URI(candidate);
+                String host = parsed.getHost();
+                if (host == null || host.isEmpty()) {
+                    return null;
+                }
+                host = host.toLowerCase(Locale.ROOT);
+                if (host.endsWith(".")) {
+                    host = host.substring(0, host.length() - 1);
+                }
+                String hostWithPort = parsed.getPort() >= 0 ? host + ":" + parsed.getPort() : host;
+                return new ParsedUri(hostWithPort, UriMatcher.baseDomain(host));
+            } catch (URISyntaxException ex) {
+                return null;
+            }
+        }
+    }
+}
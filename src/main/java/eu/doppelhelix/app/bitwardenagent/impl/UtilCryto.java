@@ -15,10 +15,12 @@
  */
 package eu.doppelhelix.app.bitwardenagent.impl;
 
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
 import eu.doppelhelix.app.bitwardenagent.http.PreloginResult;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
@@ -28,8 +30,10 @@ import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.MGF1ParameterSpec;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.List;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
@@ -55,6 +59,36 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class UtilCryto {
 
+    /**
+     * Cipher and MAC engines are expensive to look up and initialize, so a
+     * batch of values decrypted together shares one set of engines. The MAC
+     * is only reinitialized if the key changes. The engines are not kept
+     * beyond the operation, so no key material stays reachable from pooled
+     * or virtual threads.
+     */
+    private static final class SymmetricEngines {
+        private final Cipher aesCbc;
+        private final Mac hmacSha256;
+        private SecretKeySpec hmacKey;
+
+        SymmetricEngines() {
+            try {
+                aesCbc = Cipher.getInstance("AES/CBC/PKCS5Padding");
+                hmacSha256 = Mac.getInstance("HmacSHA256");
+            } catch (NoSuchAlgorithmException | NoSuchPaddingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        Mac hmacSha256(EncryptionKey encryptionKey) throws InvalidKeyException {
+            if (hmacKey != encryptionKey.macKeySpec()) {
+                hmacSha256.init(encryptionKey.macKeySpec());
+                hmacKey = encryptionKey.macKeySpec();
+            }
+            return hmacSha256;
+        }
+    }
+
     private static byte[] encodeUTF8(String input) {
         if (input == null) {
             return null;
@@ -72,14 +106,14 @@ public class UtilCryto {
         return result;
     }
 
-    public static PrivateKey decryptPrivateKey(EncryptionKey encryptionKey, String payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException, InvalidKeySpecException {
+    public static PrivateKey decryptPrivateKey(EncryptionKey encryptionKey, EncString payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException, InvalidKeySpecException {
         byte[] decryptedPayload = decryptByteArray(encryptionKey, payload);
         KeyFactory rsaFactory = KeyFactory.getInstance("RSA");
         PrivateKey rsaKey = rsaFactory.generatePrivate(new PKCS8EncodedKeySpec(decryptedPayload));
         return rsaKey;
     }
 
-    public static EncryptionKey decryptKey(EncryptionKey encryptionKey, String payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
+    public static EncryptionKey decryptKey(EncryptionKey encryptionKey, EncString payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
         byte[] decryptedPayload = decryptByteArray(encryptionKey, payload);
         return new EncryptionKey(
                 Arrays.copyOfRange(decryptedPayload, 0, 32),
@@ -87,7 +121,7 @@ public class UtilCryto {
         );
     }
 
-    public static EncryptionKey decryptKey(PrivateKey encryptionKey, String payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
+    public static EncryptionKey decryptKey(PrivateKey encryptionKey, EncString payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
         byte[] decryptedPayload = decryptByteArray(encryptionKey, payload);
         return new EncryptionKey(
                 Arrays.copyOfRange(decryptedPayload, 0, 32),
@@ -96,6 +130,10 @@ public class UtilCryto {
     }
 
     public static String decryptString(EncryptionKey encryptionKey, String payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
+        return decryptString(encryptionKey, EncString.parse(payload));
+    }
+
+    public static String decryptString(EncryptionKey encryptionKey, EncString payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
         byte[] data = decryptByteArray(encryptionKey, payload);
         if (data == null) {
             return null;
@@ -103,25 +141,51 @@ public class UtilCryto {
         return new String(data, UTF_8);
     }
 
+    /**
+     * Decrypt a list of values, that were all encrypted with the same key. The
+     * cipher and MAC engines are set up once for the whole batch. A failure to
+     * decrypt one element does not affect the others, it is reported in the
+     * result at the same position.
+     *
+     * @param encryptionKey key used for all elements
+     * @param payloads encrypted values, may contain {@code null}
+     * @return results in the order of {@code payloads}
+     */
+    public static List<DecryptionResult> decryptStrings(EncryptionKey encryptionKey, List<EncString> payloads) {
+        SymmetricEngines engines = new SymmetricEngines();
+        List<DecryptionResult> result = new ArrayList<>(payloads.size());
+        for (EncString payload : payloads) {
+            try {
+                byte[] data = decryptByteArray(engines, encryptionKey, payload);
+                result.add(new DecryptionResult(data == null ? null : new String(data, UTF_8), null));
+            } catch (GeneralSecurityException | RuntimeException ex) {
+                result.add(new DecryptionResult(null, ex));
+            }
+        }
+        return result;
+    }
+
     public static byte[] decryptByteArray(EncryptionKey encryptionKey, String payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
+        return decryptByteArray(encryptionKey, EncString.parse(payload));
+    }
+
+    public static byte[] decryptByteArray(EncryptionKey encryptionKey, EncString payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
+        return decryptByteArray(new SymmetricEngines(), encryptionKey, payload);
+    }
+
+    private static byte[] decryptByteArray(SymmetricEngines engines, EncryptionKey encryptionKey, EncString payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, InvalidKeyException, BadPaddingException, IllegalStateException {
         if (payload == null) {
             return null;
         }
-        String[] encryptedParts = payload.split("\\.", 2);
-        String encryptionScheme = encryptedParts[0];
 
-        if (!"2".equals(encryptionScheme)) {
-            throw new IllegalStateException("Unsupported Encryption scheme: " + encryptionScheme);
+        if (payload.encryptionType() != EncString.TYPE_AES_CBC_256_HMAC_SHA256_B64) {
+            throw new IllegalStateException("Unsupported Encryption scheme: " + payload.encryptionType());
         }
 
-        String[] payloadParts = encryptedParts[1].split("\\|");
-        byte[] iv = Base64.getDecoder().decode(payloadParts[0]);
-        byte[] data = Base64.getDecoder().decode(payloadParts[1]);
-        byte[] mac = Base64.getDecoder().decode(payloadParts[2]);
-        checkMac(encryptionKey.mac(), iv, data, mac);
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(encryptionKey.enc(), "AES"), new IvParameterSpec(iv));
-        byte[] userkeyDecrypted = cipher.doFinal(data);
+        checkMac(engines, encryptionKey, payload.iv(), payload.data(), payload.mac());
+        Cipher cipher = engines.aesCbc;
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey.encKeySpec(), new IvParameterSpec(payload.iv()));
+        byte[] userkeyDecrypted = cipher.doFinal(payload.data());
         return userkeyDecrypted;
     }
 
@@ -137,12 +201,13 @@ public class UtilCryto {
             return null;
         }
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        SymmetricEngines engines = new SymmetricEngines();
+        Cipher cipher = engines.aesCbc;
         byte[] iv = new byte[cipher.getBlockSize()];
         SecureRandom.getInstanceStrong().nextBytes(iv);
-        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(encryptionKey.enc(), "AES"), new IvParameterSpec(iv));
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey.encKeySpec(), new IvParameterSpec(iv));
         byte[] data = cipher.doFinal(payload);
-        byte[] mac = createMac(encryptionKey.mac(), iv, data);
+        byte[] mac = createMac(engines, encryptionKey, iv, data);
 
         return "2."
                 + Base64.getEncoder().encodeToString(iv)
@@ -152,25 +217,20 @@ public class UtilCryto {
                 + Base64.getEncoder().encodeToString(mac);
     }
 
-    public static byte[] decryptByteArray(PrivateKey encryptionKey, String payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
-        String[] encryptedParts = payload.split("\\.", 2);
-        String encryptionScheme = encryptedParts[0];
-
-        if (!"4".equals(encryptionScheme)) {
-            throw new IllegalStateException("Unsupported Encryption scheme: " + encryptionScheme);
+    public static byte[] decryptByteArray(PrivateKey encryptionKey, EncString payload) throws InvalidAlgorithmParameterException, IllegalBlockSizeException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, NoSuchPaddingException, IllegalStateException {
+        if (payload.encryptionType() != EncString.TYPE_RSA2048_OAEP_SHA1_B64) {
+            throw new IllegalStateException("Unsupported Encryption scheme: " + payload.encryptionType());
         }
 
-        byte[] encryptedPayload = Base64.getDecoder().decode(encryptedParts[1]);
-
         Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPPadding");
         OAEPParameterSpec oaepParams = new OAEPParameterSpec("SHA-1", "MGF1", new MGF1ParameterSpec("SHA-1"), PSource.PSpecified.DEFAULT);
         cipher.init(Cipher.DECRYPT_MODE, encryptionKey, oaepParams);
-        byte[] payloadDecrypted = cipher.doFinal(encryptedPayload);
+        byte[] payloadDecrypted = cipher.doFinal(payload.data());
         return payloadDecrypted;
     }
 
-    private static void checkMac(byte[] macKey, byte[] iv, byte[] data, byte[] targetMac) throws IllegalStateException, InvalidKeyException, NoSuchAlgorithmException {
-        byte[] refMac = createMac(macKey, iv, data);
+    private static void checkMac(SymmetricEngines engines, EncryptionKey encryptionKey, byte[] iv, byte[] data, byte[] targetMac) throws IllegalStateException, InvalidKeyException {
+        byte[] refMac = createMac(engines, encryptionKey, iv, data);
 
         if (!Arrays.equals(refMac, targetMac)) {
             System.out.println("Ref:        " + Hex.toHexString(refMac));
@@ -179,9 +239,8 @@ public class UtilCryto {
         }
     }
 
-    private static byte[] createMac(byte[] macKey, byte[] iv, byte[] data) throws IllegalStateException, InvalidKeyException, NoSuchAlgorithmException {
-        Mac hmac256 = Mac.getInstance("HmacSHA256");
-        hmac256.init(new SecretKeySpec(macKey, "HmacSHA256"));
+    private static byte[] createMac(SymmetricEngines engines, EncryptionKey encryptionKey, byte[] iv, byte[] data) throws IllegalStateException, InvalidKeyException {
+        Mac hmac256 = engines.hmacSha256(encryptionKey);
         hmac256.update(iv);
         byte[] refMac = hmac256.doFinal(data);
         return refMac;
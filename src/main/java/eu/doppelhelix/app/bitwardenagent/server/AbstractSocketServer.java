@@ -0,0 +1,121 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import eu.doppelhelix.app.bitwardenagent.Configuration;
+import eu.doppelhelix.app.bitwardenagent.impl.BitwardenClient;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static eu.doppelhelix.app.bitwardenagent.impl.Util.isWindows;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Base for the servers answering queries over the unix domain socket.
+ */
+public abstract class AbstractSocketServer extends Thread {
+
+    private static final System.Logger LOG = System.getLogger(AbstractSocketServer.class.getName());
+
+    /**
+     * Sent to connections exceeding the connection limit before they are
+     * closed. It is sent before anything is read, so it is not framed.
+     */
+    static final String BUSY_RESPONSE = "!busy\n";
+
+    final Path socketDirectory;
+    final QueryEvaluator queryEvaluator;
+    int maxConnections;
+    int readTimeout;
+    int idleTimeout;
+
+    AbstractSocketServer(BitwardenClient bitwardenClient, Path socketDirectory) {
+        setDaemon(true);
+        this.socketDirectory = socketDirectory;
+        this.queryEvaluator = new QueryEvaluator(bitwardenClient);
+        Configuration configuration = Configuration.getConfiguration();
+        this.maxConnections = configuration.getSocketMaxConnections();
+        this.readTimeout = configuration.getSocketReadTimeout();
+        this.idleTimeout = configuration.getSocketIdleTimeout();
+    }
+
+    /**
+     * Override the limits from the configuration, must be called before the
+     * server is started.
+     */
+    void setLimits(int maxConnections, int readTimeout, int idleTimeout) {
+        this.maxConnections = maxConnections;
+        this.readTimeout = readTimeout;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Create the server implementation selected in the configuration.
+     */
+    public static AbstractSocketServer create(BitwardenClient bitwardenClient) {
+        if (Configuration.getConfiguration().isSocketSelectorServer()) {
+            return new SelectorSocketServer(bitwardenClient, defaultSocketDirectory());
+        } else {
+            return new UnixDomainSocketServer(bitwardenClient, defaultSocketDirectory());
+        }
+    }
+
+    static Path defaultSocketDirectory() {
+        return isWindows()
+                ? Path.of(System.getenv("LOCALAPPDATA"), "BitwardenAgent", "sockets")
+                : Path.of(System.getenv("HOME"), ".cache/BitwardenAgent", "sockets");
+    }
+
+    /**
+     * Create the socket directory if necessary and remove a stale socket.
+     *
+     * @return path of the socket
+     */
+    Path prepareSocketPath() throws IOException {
+        if (!Files.exists(socketDirectory)) {
+            Files.createDirectories(socketDirectory);
+        }
+        Path socketPath = socketDirectory.resolve("socket");
+        Files.deleteIfExists(socketPath);
+        return socketPath;
+    }
+
+    /**
+     * Answer a connection, that exceeds the connection limit, with
+     * {@link #BUSY_RESPONSE} and close it. The write is a single
+     * non-blocking attempt, so that a client, that does not read, can not
+     * stall the accepting thread. The marker fits into the empty socket
+     * buffer of a new connection.
+     */
+    void rejectBusy(SocketChannel channel) {
+        LOG.log(Level.WARNING, "Connection limit of {0} reached, rejecting connection", maxConnections);
+        try (channel) {
+            channel.configureBlocking(false);
+            channel.write(ByteBuffer.wrap(BUSY_RESPONSE.getBytes(UTF_8)));
+        } catch (IOException ex) {
+            LOG.log(Level.DEBUG, "Failed to reject connection", ex);
+        }
+    }
+
+    /**
+     * Stop the server and block until it is shut down.
+     */
+    public abstract void shutdown() throws IOException;
+}
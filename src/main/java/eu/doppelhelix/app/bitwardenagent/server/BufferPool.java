@@ -0,0 +1,68 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers used to stream responses to the clients.
+ *
+ * <p>The buffers are cleared before they are put back into the pool, so that
+ * secret values do not linger in memory longer than necessary.</p>
+ */
+final class BufferPool {
+
+    static final int CHUNK_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+    private BufferPool() {
+    }
+
+    static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        POOL_SIZE.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. Buffers, that were not obtained from the
+     * pool, are ignored.
+     */
+    static void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() != CHUNK_SIZE) {
+            return;
+        }
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        buffer.clear();
+        if (POOL_SIZE.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            POOL.add(buffer);
+        } else {
+            POOL_SIZE.decrementAndGet();
+        }
+    }
+}
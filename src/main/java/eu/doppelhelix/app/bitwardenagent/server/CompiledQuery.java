@@ -0,0 +1,303 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptedCipherData;
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptedFieldData;
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptedSyncData;
+import eu.doppelhelix.app.bitwardenagent.impl.TOTPUtil;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Query path ({@code <ID>/<area>/<attribute>}), that was parsed into the
+ * selection of the entry and an accessor for the requested value.
+ *
+ * <p>The entry is selected by id or by one of the selectors
+ * {@code name:<name>}, {@code folder:<folder>/<name>} and
+ * {@code username:<username>}. The selector extends up to the first segment,
+ * that is an area ({@code login}, {@code notes}, ...). A {@code /} inside a
+ * name has to be written as {@code %2F}, segments of selectors are percent
+ * decoded.</p>
+ */
+final class CompiledQuery {
+
+    private static final Function<DecryptedCipherData, String> UNKNOWN = dcd -> "";
+    private static final String TOTP_TOKEN_VALIDITY = "totpTokenValidity";
+
+    private static final Map<String, Function<DecryptedCipherData, String>> ACCESSORS = new HashMap<>();
+    private static final Map<String, Function<DecryptedFieldData, String>> FIELD_ACCESSORS = new HashMap<>();
+
+    static {
+        ACCESSORS.put("login/username", dcd -> dcd.getLogin().getUsername());
+        ACCESSORS.put("login/password", dcd -> dcd.getLogin().getPassword());
+        ACCESSORS.put("login/totp", dcd -> dcd.getLogin().getTotp());
+        ACCESSORS.put("login/totpToken", dcd -> dcd.getLogin().getTotpToken().value());
+        ACCESSORS.put("login/" + TOTP_TOKEN_VALIDITY, CompiledQuery::totpTokenValidity);
+        ACCESSORS.put("sshKey/keyFingerprint", dcd -> dcd.getSshKey().getKeyFingerprint());
+        ACCESSORS.put("sshKey/privateKey", dcd -> dcd.getSshKey().getPrivateKey());
+        ACCESSORS.put("sshKey/publicKey", dcd -> dcd.getSshKey().getPublicKey());
+        ACCESSORS.put("card/brand", dcd -> dcd.getCard().getBrand());
+        ACCESSORS.put("card/cardholderName", dcd -> dcd.getCard().getCardholderName());
+        ACCESSORS.put("card/number", dcd -> dcd.getCard().getNumber());
+        ACCESSORS.put("card/code", dcd -> dcd.getCard().getCode());
+        ACCESSORS.put("card/expMonth", dcd -> dcd.getCard().getExpMonth());
+        ACCESSORS.put("card/expYear", dcd -> dcd.getCard().getExpYear());
+        ACCESSORS.put("identity/title", dcd -> dcd.getIdentity().getTitle());
+        ACCESSORS.put("identity/firstName", dcd -> dcd.getIdentity().getFirstName());
+        ACCESSORS.put("identity/middleName", dcd -> dcd.getIdentity().getMiddleName());
+        ACCESSORS.put("identity/lastName", dcd -> dcd.getIdentity().getLastName());
+        ACCESSORS.put("identity/address1", dcd -> dcd.getIdentity().getAddress1());
+        ACCESSORS.put("identity/address2", dcd -> dcd.getIdentity().getAddress2());
+        ACCESSORS.put("identity/address3", dcd -> dcd.getIdentity().getAddress3());
+        ACCESSORS.put("identity/city", dcd -> dcd.getIdentity().getCity());
+        ACCESSORS.put("identity/state", dcd -> dcd.getIdentity().getState());
+        ACCESSORS.put("identity/postalCode", dcd -> dcd.getIdentity().getPostalCode());
+        ACCESSORS.put("identity/country", dcd -> dcd.getIdentity().getCountry());
+        ACCESSORS.put("identity/company", dcd -> dcd.getIdentity().getCompany());
+        ACCESSORS.put("identity/email", dcd -> dcd.getIdentity().getEmail());
+        ACCESSORS.put("identity/phone", dcd -> dcd.getIdentity().getPhone());
+        ACCESSORS.put("identity/ssn", dcd -> dcd.getIdentity().getSsn());
+        ACCESSORS.put("identity/username", dcd -> dcd.getIdentity().getUsername());
+        ACCESSORS.put("identity/passportNumber", dcd -> dcd.getIdentity().getPassportNumber());
+        ACCESSORS.put("identity/licenseNumber", dcd -> dcd.getIdentity().getLicenseNumber());
+
+        FIELD_ACCESSORS.put("linkedId", dfd -> dfd.getLinkedId().name());
+        FIELD_ACCESSORS.put("name", dfd -> dfd.getName());
+        FIELD_ACCESSORS.put("value", dfd -> dfd.getValue());
+        FIELD_ACCESSORS.put("type", dfd -> dfd.getType().name());
+    }
+
+    private static final Set<String> AREAS = Set.of("login", "sshKey", "card", "identity", "notes", "fields");
+    private static final String SELECTOR_NAME = "name:";
+    private static final String SELECTOR_FOLDER = "folder:";
+    private static final String SELECTOR_USERNAME = "username:";
+
+    private final String entryId;
+    private final Function<DecryptedSyncData, List<DecryptedCipherData>> selector;
+    private final Function<DecryptedCipherData, String> accessor;
+    private final boolean timeDependent;
+    private final int minTotpValidity;
+
+    private CompiledQuery(String entryId, Function<DecryptedSyncData, List<DecryptedCipherData>> selector, String area, String attribute) {
+        this.entryId = entryId;
+        this.selector = selector;
+        this.accessor = compileAccessor(area, attribute);
+        this.timeDependent = "login".equals(area)
+                && attribute != null
+                && (attribute.equals("totpToken")
+                    || attribute.equals(TOTP_TOKEN_VALIDITY)
+                    || attribute.startsWith(TOTP_TOKEN_VALIDITY + "/"));
+        this.minTotpValidity = "login".equals(area) && attribute != null && attribute.startsWith(TOTP_TOKEN_VALIDITY + "/")
+                ? parseMinValidity(attribute.substring(TOTP_TOKEN_VALIDITY.length() + 1))
+                : 0;
+    }
+
+    /**
+     * @param path query path
+     * @return the compiled query or {@code null} if the path does not have
+     *         the expected format
+     */
+    static CompiledQuery compile(String path) {
+        String trimmedPath = path.trim();
+        if (trimmedPath.startsWith(SELECTOR_NAME)
+                || trimmedPath.startsWith(SELECTOR_FOLDER)
+                || trimmedPath.startsWith(SELECTOR_USERNAME)) {
+            return compileSelector(trimmedPath);
+        }
+        String[] target = trimmedPath.split("/", 3);
+        if (target.length < 2) {
+            return null;
+        }
+        return new CompiledQuery(target[0], null, target[1], target.length > 2 ? target[2] : null);
+    }
+
+    private static CompiledQuery compileSelector(String path) {
+        String[] segments = path.split("/", -1);
+        int areaIndex = 1;
+        while (areaIndex < segments.length && !AREAS.contains(segments[areaIndex])) {
+            areaIndex++;
+        }
+        if (areaIndex >= segments.length) {
+            return null;
+        }
+        List<String> selectorSegments = new ArrayList<>();
+        try {
+            for (int i = 0; i < areaIndex; i++) {
+                selectorSegments.add(percentDecode(segments[i]));
+            }
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+        String first = selectorSegments.get(0);
+        Function<DecryptedSyncData, List<DecryptedCipherData>> selector;
+        if (first.startsWith(SELECTOR_FOLDER)) {
+            selectorSegments.set(0, first.substring(SELECTOR_FOLDER.length()));
+            String name = selectorSegments.remove(selectorSegments.size() - 1);
+            String folder = selectorSegments.isEmpty() ? null : String.join("/", selectorSegments);
+            selector = sd -> sd.getCiphersByFolderAndName(folder, name);
+        } else if (selectorSegments.size() != 1) {
+            return null;
+        } else if (first.startsWith(SELECTOR_NAME)) {
+            String name = first.substring(SELECTOR_NAME.length());
+            selector = sd -> sd.getCiphersByName(name);
+        } else {
+            String username = first.substring(SELECTOR_USERNAME.length());
+            selector = sd -> sd.getCiphersByUsername(username);
+        }
+        String area = segments[areaIndex];
+        String attribute = areaIndex + 1 < segments.length
+                ? String.join("/", Arrays.copyOfRange(segments, areaIndex + 1, segments.length))
+                : null;
+        return new CompiledQuery(null, selector, area, attribute);
+    }
+
+    private static String percentDecode(String segment) {
+        // URLDecoder would turn '+' into a space
+        return URLDecoder.decode(segment.replace("+", "%2B"), UTF_8);
+    }
+
+    private static Function<DecryptedCipherData, String> compileAccessor(String area, String attribute) {
+        return switch (area) {
+            case "notes" -> dcd -> dcd.getNotes();
+            case "fields" -> attribute == null ? UNKNOWN : compileFieldAccessor(attribute);
+            case "login" -> attribute != null && attribute.startsWith(TOTP_TOKEN_VALIDITY + "/")
+                    ? compileTotpTokenValidityAccessor(attribute.substring(TOTP_TOKEN_VALIDITY.length() + 1))
+                    : compileAccessor(area, attribute, UNKNOWN);
+            default -> compileAccessor(area, attribute, UNKNOWN);
+        };
+    }
+
+    private static Function<DecryptedCipherData, String> compileAccessor(String area, String attribute, Function<DecryptedCipherData, String> defaultAccessor) {
+        return attribute == null ? defaultAccessor : ACCESSORS.getOrDefault(area + "/" + attribute, defaultAccessor);
+    }
+
+    private static Function<DecryptedCipherData, String> compileTotpTokenValidityAccessor(String minValidity) {
+        // The requested validity is met by delaying the evaluation, see
+        // delay(DecryptedCipherData)
+        return parseMinValidity(minValidity) < 0 ? UNKNOWN : CompiledQuery::totpTokenValidity;
+    }
+
+    /**
+     * @return the requested validity in seconds or {@code -1} if it is not
+     *         a valid number of seconds
+     */
+    private static int parseMinValidity(String minValidity) {
+        try {
+            return Math.max(-1, Integer.parseInt(minValidity));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Calculate the TOTP token and its remaining validity in seconds,
+     * separated by a newline.
+     */
+    private static String totpTokenValidity(DecryptedCipherData dcd) {
+        TOTPUtil.TOTPToken token = dcd.getLogin().getTotpToken();
+        long remaining = token.validUntil() - System.currentTimeMillis();
+        return token.value() + "\n" + Math.ceilDiv(Math.max(0, remaining), 1000L);
+    }
+
+    /**
+     * The field is referenced by name or, if no field with that name exists,
+     * by its index.
+     */
+    private static Function<DecryptedCipherData, String> compileFieldAccessor(String attribute) {
+        int separator = attribute.lastIndexOf('/');
+        if (separator < 0) {
+            return UNKNOWN;
+        }
+        String fieldReference = attribute.substring(0, separator);
+        Function<DecryptedFieldData, String> fieldAccessor = FIELD_ACCESSORS.get(attribute.substring(separator + 1));
+        if (fieldAccessor == null) {
+            return UNKNOWN;
+        }
+        int fieldIndex;
+        try {
+            fieldIndex = Integer.parseInt(fieldReference);
+        } catch (NumberFormatException ex) {
+            fieldIndex = -1;
+        }
+        int referencedIndex = fieldIndex;
+        return dcd -> {
+            DecryptedFieldData dfd = dcd.getField(fieldReference);
+            if (dfd == null && referencedIndex >= 0 && referencedIndex < dcd.getFields().size()) {
+                dfd = dcd.getFields().get(referencedIndex);
+            }
+            return dfd != null ? fieldAccessor.apply(dfd) : "";
+        };
+    }
+
+    /**
+     * @return id of the entry or {@code null} if the entry is selected by a
+     *         selector
+     */
+    String entryId() {
+        return entryId;
+    }
+
+    /**
+     * @return {@code true} if the value changes over time without a change
+     *         of the vault (TOTP tokens)
+     */
+    boolean isTimeDependent() {
+        return timeDependent;
+    }
+
+    /**
+     * If the current TOTP token is valid for less than the requested time,
+     * the query has to be evaluated once the next period started. The
+     * requested time is clamped to the period of the token, as no token is
+     * valid for longer.
+     *
+     * @return milliseconds to wait before the query is evaluated
+     */
+    long delay(DecryptedCipherData dcd) {
+        if (minTotpValidity <= 0) {
+            return 0;
+        }
+        TOTPUtil.TOTPToken token = dcd.getLogin().getTotpToken();
+        long remaining = token.validUntil() - System.currentTimeMillis();
+        if (remaining < Math.min(minTotpValidity, token.period()) * 1000L) {
+            return Math.max(0, remaining);
+        }
+        return 0;
+    }
+
+    /**
+     * @return entries matching the selector
+     */
+    List<DecryptedCipherData> resolve(DecryptedSyncData syncData) {
+        return selector.apply(syncData);
+    }
+
+    /**
+     * @return the requested value, {@code null} if it is not set
+     */
+    String apply(DecryptedCipherData dcd) {
+        return accessor.apply(dcd);
+    }
+}
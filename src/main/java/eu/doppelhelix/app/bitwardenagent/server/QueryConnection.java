@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handles a single client connection on a blocking channel. The protocol is
+ * implemented by {@link QueryDecoder}.
+ *
+ * <p>All complete queries of a read are answered with a single write. The
+ * connection is closed if a query is not received completely or a response
+ * is not read within the read timeout or if a pipelined connection stays idle
+ * longer than the idle timeout.</p>
+ */
+class QueryConnection implements Runnable {
+
+    private static final System.Logger LOG = System.getLogger(QueryConnection.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private final SocketChannel channel;
+    private final QueryEvaluator queryEvaluator;
+    private final ScheduledExecutorService timeoutScheduler;
+    private final int readTimeout;
+    private final int idleTimeout;
+    private final QueryDecoder decoder = new QueryDecoder();
+    private volatile boolean timedOut;
+
+    QueryConnection(SocketChannel channel, QueryEvaluator queryEvaluator, ScheduledExecutorService timeoutScheduler, int readTimeout, int idleTimeout) {
+        this.channel = channel;
+        this.queryEvaluator = queryEvaluator;
+        this.timeoutScheduler = timeoutScheduler;
+        this.readTimeout = readTimeout;
+        this.idleTimeout = idleTimeout;
+    }
+
+    @Override
+    public void run() {
+        try (channel) {
+            ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            List<ByteBuffer> output = new ArrayList<>();
+            while (true) {
+                readBuffer.clear();
+                // Between queries the client may idle, inside a query it has
+                // to keep sending
+                if (read(readBuffer, decoder.isIdle() ? idleTimeout : readTimeout) < 0) {
+                    decoder.endOfInput();
+                } else {
+                    readBuffer.flip();
+                    decoder.append(readBuffer);
+                }
+                // A delayed query does not hold up the evaluation of the
+                // queries behind it, only their answers wait for it
+                List<CompletableFuture<String>> results = new ArrayList<>();
+                String query;
+                while ((query = decoder.nextQuery()) != null) {
+                    results.add(queryEvaluator.evaluateAsync(query));
+                }
+                for (CompletableFuture<String> result : results) {
+                    decoder.encode(result.join(), output::add);
+                }
+                if (!output.isEmpty()) {
+                    write(output);
+                }
+                if (decoder.isComplete() || decoder.isEndOfInput()) {
+                    return;
+                }
+            }
+        } catch (ProtocolException ex) {
+            LOG.log(Level.WARNING, "{0}, closing connection", ex.getMessage());
+        } catch (AsynchronousCloseException ex) {
+            if (timedOut) {
+                LOG.log(Level.DEBUG, "Closed connection after timeout");
+            } else {
+                LOG.log(Level.ERROR, (String) null, ex);
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.ERROR, (String) null, ex);
+        }
+    }
+
+    private int read(ByteBuffer readBuffer, int timeout) throws IOException {
+        ScheduledFuture<?> timeoutTask = timeoutScheduler.schedule(this::closeOnTimeout, timeout, TimeUnit.MILLISECONDS);
+        try {
+            return channel.read(readBuffer);
+        } finally {
+            timeoutTask.cancel(false);
+        }
+    }
+
+    private void closeOnTimeout() {
+        timedOut = true;
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            LOG.log(Level.ERROR, (String) null, ex);
+        }
+    }
+
+    /**
+     * A client, that stops reading, blocks the write once the socket buffer
+     * is full, so the write is bounded by the read timeout as well.
+     */
+    private void write(List<ByteBuffer> output) throws IOException {
+        ScheduledFuture<?> timeoutTask = timeoutScheduler.schedule(this::closeOnTimeout, readTimeout, TimeUnit.MILLISECONDS);
+        try {
+            ByteBuffer[] buffers = output.toArray(ByteBuffer[]::new);
+            long remaining = 0;
+            for (ByteBuffer bb : buffers) {
+                remaining += bb.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+        } finally {
+            timeoutTask.cancel(false);
+            output.forEach(BufferPool::release);
+            output.clear();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Splits the data received from a client into queries and encodes the
+ * responses. The decoder does no IO itself, data is pushed into it, so that it
+ * can be used with blocking and non-blocking channels.
+ *
+ * <p>By default a connection carries exactly one query: the data of the first
+ * read is the query, the response is the plain value and the connection is
+ * closed after the response. If the client starts with the line
+ * {@code !pipeline} every following line is a query. The responses are
+ * prefixed by their length in bytes and a newline:</p>
+ *
+ * <pre>
+ * &lt;length&gt;\n&lt;value&gt;
+ * </pre>
+ *
+ * <p>Clients, that need to send long queries or fetch large values, can use
+ * the binary protocol. It is selected by sending the byte {@code 0x00}
+ * followed by the protocol version ({@code 0x01}). After that each request
+ * and each response is a 32 bit big endian length followed by that many bytes
+ * of UTF-8 encoded data. Responses are streamed in chunks from pooled
+ * buffers.</p>
+ */
+final class QueryDecoder {
+
+    static final String PIPELINE_COMMAND = "!pipeline";
+    private static final byte[] PIPELINE_PREAMBLE = (PIPELINE_COMMAND + "\n").getBytes(UTF_8);
+    static final byte BINARY_MAGIC = 0x00;
+    static final byte BINARY_VERSION_1 = 0x01;
+    private static final int BINARY_PREAMBLE_LENGTH = 2;
+    private static final int BINARY_LENGTH_PREFIX = 4;
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private enum Mode {
+        UNDECIDED, SINGLE, PIPELINE, BINARY
+    }
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private Mode mode = Mode.UNDECIDED;
+    private boolean endOfInput;
+    private boolean singleQueryTaken;
+
+    /**
+     * Append data received from the client.
+     *
+     * @throws ProtocolException if a query exceeds the maximum length
+     */
+    void append(ByteBuffer data) throws ProtocolException {
+        if (buffer.position() > MAX_LINE_LENGTH + BINARY_LENGTH_PREFIX) {
+            throw new ProtocolException("Query exceeds maximum length of " + MAX_LINE_LENGTH + " bytes");
+        }
+        if (buffer.remaining() < data.remaining()) {
+            int newCapacity = Math.max(buffer.capacity() * 2, buffer.position() + data.remaining());
+            ByteBuffer grown = ByteBuffer.allocate(newCapacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+        buffer.put(data);
+    }
+
+    /**
+     * Mark, that the client closed its side of the connection.
+     */
+    void endOfInput() {
+        endOfInput = true;
+    }
+
+    boolean isEndOfInput() {
+        return endOfInput;
+    }
+
+    /**
+     * @return the next complete query or {@code null} if more data is needed
+     */
+    String nextQuery() throws ProtocolException {
+        if (mode == Mode.UNDECIDED) {
+            if (buffer.position() > 0 && buffer.get(0) == BINARY_MAGIC) {
+                if (buffer.position() < BINARY_PREAMBLE_LENGTH) {
+                    return null;
+                }
+                if (buffer.get(1) != BINARY_VERSION_1) {
+                    throw new ProtocolException("Unsupported protocol version: " + buffer.get(1));
+                }
+                mode = Mode.BINARY;
+                discard(BINARY_PREAMBLE_LENGTH);
+            } else if (isPipelinePreamblePrefix()) {
+                if (buffer.position() >= PIPELINE_PREAMBLE.length) {
+                    mode = Mode.PIPELINE;
+                    discard(PIPELINE_PREAMBLE.length);
+                } else if (endOfInput) {
+                    mode = Mode.SINGLE;
+                } else {
+                    return null;
+                }
+            } else if (buffer.position() > 0 || endOfInput) {
+                mode = Mode.SINGLE;
+            } else {
+                return null;
+            }
+        }
+        if (mode == Mode.SINGLE) {
+            if (singleQueryTaken) {
+                return null;
+            }
+            singleQueryTaken = true;
+            return new String(buffer.array(), 0, buffer.position(), UTF_8);
+        }
+        if (mode == Mode.BINARY) {
+            return nextBinaryQuery();
+        }
+        while (true) {
+            int lineEnd = -1;
+            for (int i = 0; i < buffer.position(); i++) {
+                if (buffer.get(i) == '\n') {
+                    lineEnd = i;
+                    break;
+                }
+            }
+            if (lineEnd < 0) {
+                return null;
+            }
+            String query = new String(buffer.array(), 0, lineEnd, UTF_8).trim();
+            discard(lineEnd + 1);
+            if (!query.isEmpty()) {
+                return query;
+            }
+        }
+    }
+
+    private String nextBinaryQuery() throws ProtocolException {
+        if (buffer.position() < BINARY_LENGTH_PREFIX) {
+            return null;
+        }
+        int length = buffer.getInt(0);
+        if (length < 0 || length > MAX_LINE_LENGTH) {
+            throw new ProtocolException("Query exceeds maximum length of " + MAX_LINE_LENGTH + " bytes");
+        }
+        if (buffer.position() < BINARY_LENGTH_PREFIX + length) {
+            return null;
+        }
+        String query = new String(buffer.array(), BINARY_LENGTH_PREFIX, length, UTF_8);
+        discard(BINARY_LENGTH_PREFIX + length);
+        return query;
+    }
+
+    private void discard(int length) {
+        buffer.flip();
+        buffer.position(length);
+        buffer.compact();
+    }
+
+    /**
+     * @return {@code true} if no further queries will be decoded, the
+     *         connection can be closed after the pending responses are sent
+     */
+    boolean isComplete() {
+        return (mode == Mode.SINGLE && singleQueryTaken)
+                || ((mode == Mode.PIPELINE || mode == Mode.BINARY) && endOfInput);
+    }
+
+    /**
+     * @return {@code true} if the connection waits for the next query of a
+     *         pipeline and no part of it was received yet
+     */
+    boolean isIdle() {
+        return (mode == Mode.PIPELINE || mode == Mode.BINARY) && buffer.position() == 0;
+    }
+
+    /**
+     * Encode the response for a query. Must only be called after a query was
+     * returned by {@link #nextQuery()}. The response is passed to the sink as
+     * a sequence of buffers, that have to be written in order and handed back
+     * to {@link BufferPool#release(ByteBuffer)} after they were written.
+     */
+    void encode(String value, Consumer<ByteBuffer> sink) {
+        switch (mode) {
+            case BINARY -> encodeBinary(value, sink);
+            case PIPELINE -> {
+                byte[] data = value.getBytes(UTF_8);
+                byte[] header = (data.length + "\n").getBytes(UTF_8);
+                ByteBuffer frame = ByteBuffer.allocate(header.length + data.length);
+                frame.put(header);
+                frame.put(data);
+                frame.flip();
+                sink.accept(frame);
+            }
+            default -> sink.accept(ByteBuffer.wrap(value.getBytes(UTF_8)));
+        }
+    }
+
+    /**
+     * Stream the value in chunks. The value is encoded directly into the
+     * pooled buffers, so no byte array of the full value is created.
+     */
+    private static void encodeBinary(String value, Consumer<ByteBuffer> sink) {
+        CharsetEncoder encoder = UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer input = CharBuffer.wrap(value);
+        ByteBuffer chunk = BufferPool.acquire();
+        chunk.putInt(utf8Length(value));
+        while (encoder.encode(input, chunk, true).isOverflow()) {
+            chunk.flip();
+            sink.accept(chunk);
+            chunk = BufferPool.acquire();
+        }
+        encoder.flush(chunk);
+        chunk.flip();
+        sink.accept(chunk);
+    }
+
+    /**
+     * Length of the UTF-8 encoding of the value. Unpaired surrogates count as
+     * one byte, as the encoder replaces them with {@code ?}.
+     */
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private boolean isPipelinePreamblePrefix() {
+        int length = Math.min(buffer.position(), PIPELINE_PREAMBLE.length);
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(i) != PIPELINE_PREAMBLE[i]) {
+                return false;
+            }
+        }
+        return buffer.position() > 0;
+    }
+}
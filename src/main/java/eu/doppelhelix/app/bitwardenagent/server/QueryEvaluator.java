@@ -0,0 +1,405 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.doppelhelix.app.bitwardenagent.Configuration;
+import eu.doppelhelix.app.bitwardenagent.impl.BitwardenClient;
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptedCipherData;
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptedSyncData;
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptionFailedException;
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static eu.doppelhelix.app.bitwardenagent.Configuration.PROP_ALLOW_ACCESS;
+import static eu.doppelhelix.app.bitwardenagent.Configuration.PROP_ALLOW_ALL_ACCESS;
+
+/**
+ * Evaluates queries of the form {@code <ID>/<area>/<attribute>} against the
+ * current vault snapshot. Access is only granted to entries, that were
+ * allowed in the configuration.
+ */
+class QueryEvaluator {
+
+    private static final System.Logger LOG = System.getLogger(QueryEvaluator.class.getName());
+
+    private static final TypeReference<List<String>> PATH_LIST = new TypeReference<>() {};
+    static final String URL_COMMAND = "!url ";
+    static final String GENERATION_COMMAND = "!generation";
+    static final String IF_CHANGED_COMMAND = "!if-changed ";
+    static final String UNCHANGED = "!unchanged";
+    // Changes to the access rules change the answers as well. The counter is
+    // shared by all instances, so that the generation does not go backwards
+    // when the server is restarted from the UI.
+    private static final AtomicLong ACCESS_GENERATION = new AtomicLong();
+    // The counters start at zero in every process. The start time in the
+    // upper bits keeps generations of an earlier process from matching
+    // again after the agent was restarted.
+    private static final long PROCESS_EPOCH = System.currentTimeMillis() << 20;
+    private static final int MAX_CACHED_QUERIES = 1024;
+    private static final Executor DELAYED_EVALUATION = task -> Thread.ofVirtual().name("QueryEvaluator delayed").start(task);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BitwardenClient bitwardenClient;
+    private final long epoch;
+    private final Set<String> allowAccess = Collections.synchronizedSet(new HashSet<>());
+    private final Map<String, CompiledQuery> compiledQueries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledQuery> eldest) {
+            return size() > MAX_CACHED_QUERIES;
+        }
+    });
+
+    QueryEvaluator(BitwardenClient bitwardenClient) {
+        this(bitwardenClient, PROCESS_EPOCH);
+    }
+
+    QueryEvaluator(BitwardenClient bitwardenClient, long epoch) {
+        this.bitwardenClient = bitwardenClient;
+        this.epoch = epoch;
+        allowAccess.addAll(Configuration.getConfiguration().getAllowAccess());
+        Configuration.getConfiguration().addObserver((name, value) -> {
+            if (PROP_ALLOW_ACCESS.equals(name)) {
+                allowAccess.addAll((Collection<String>) value);
+                allowAccess.retainAll((Collection<String>) value);
+                ACCESS_GENERATION.incrementAndGet();
+            } else if (PROP_ALLOW_ALL_ACCESS.equals(name)) {
+                ACCESS_GENERATION.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Evaluate a query. A query starting with {@code [} is a batch query: a
+     * JSON array of paths, that is answered with a JSON object mapping each
+     * path to its value. All paths of a batch are resolved against the same
+     * vault snapshot.
+     *
+     * <p>Instead of the id an entry can be selected by {@code name:<name>},
+     * {@code folder:<folder>/<name>} or {@code username:<username>}. A
+     * selector only resolves if exactly one entry matches, ambiguous
+     * selectors are treated like missing entries. Missing entries are only
+     * reported as {@code "-"} if access to all entries is allowed, so that
+     * selectors can not be used to probe for entries.</p>
+     *
+     * <p>The query {@code !url <url>} lists the logins, that apply to the URL,
+     * as a JSON array of objects with the {@code id} and {@code name} of the
+     * entry. Only entries, that may be accessed, are listed.</p>
+     *
+     * <p>Polling clients can avoid the evaluation: {@code !generation}
+     * returns the current generation of the answers, a number that increases
+     * whenever the vault or the access rules change.
+     * {@code !if-changed <generation> <query>} answers {@code !unchanged} if
+     * the generation still matches, otherwise the current generation, a
+     * newline and the answer to the query. Queries for TOTP tokens change
+     * over time and are always answered.</p>
+     *
+     * @param query query to evaluate
+     * @return the value, {@code "-"} if the entry is not present and an empty
+     *         string if access is denied or the attribute is not set
+     * @see #evaluateAsync(String)
+     */
+    public String evaluate(String query) {
+        String trimmedQuery = query.trim();
+        if (trimmedQuery.startsWith("[")) {
+            return evaluateBatch(trimmedQuery);
+        }
+        if (trimmedQuery.equals(GENERATION_COMMAND)) {
+            return Long.toString(generation());
+        }
+        if (trimmedQuery.startsWith(IF_CHANGED_COMMAND)) {
+            return evaluateIfChanged(trimmedQuery.substring(IF_CHANGED_COMMAND.length()).trim());
+        }
+        if (trimmedQuery.startsWith(URL_COMMAND)) {
+            return evaluateUrl(trimmedQuery.substring(URL_COMMAND.length()).trim());
+        }
+        CompiledQuery compiledQuery = compile(trimmedQuery);
+        if (compiledQuery == null) {
+            return "";
+        }
+        return evaluate(compiledQuery, trimmedQuery, bitwardenClient::getSyncData);
+    }
+
+    /**
+     * Evaluate a query like {@link #evaluate(String)}, but delay the
+     * evaluation until a requested TOTP token validity
+     * ({@code totpTokenValidity/<seconds>}) can be met. No thread is blocked
+     * while waiting, so the caller can evaluate further queries.
+     *
+     * @param query query to evaluate
+     * @return the future value, queries, that do not need to wait, are
+     *         evaluated by the calling thread
+     */
+    CompletableFuture<String> evaluateAsync(String query) {
+        long delay;
+        try {
+            delay = delay(query);
+        } catch (RuntimeException ex) {
+            // Reported when the query is evaluated
+            delay = 0;
+        }
+        if (delay <= 0) {
+            return CompletableFuture.completedFuture(evaluate(query));
+        }
+        return CompletableFuture.supplyAsync(() -> evaluate(query), CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, DELAYED_EVALUATION));
+    }
+
+    /**
+     * @return milliseconds to wait before the query is evaluated, for a
+     *         batch the longest wait of its paths
+     */
+    private long delay(String query) {
+        String trimmedQuery = query.trim();
+        if (trimmedQuery.startsWith(IF_CHANGED_COMMAND)) {
+            String arguments = trimmedQuery.substring(IF_CHANGED_COMMAND.length()).trim();
+            int separator = arguments.indexOf(' ');
+            return separator < 0 ? 0 : delay(arguments.substring(separator + 1));
+        }
+        if (trimmedQuery.startsWith("[")) {
+            long delay = 0;
+            try {
+                for (String path : objectMapper.readValue(trimmedQuery, PATH_LIST)) {
+                    if (path != null) {
+                        delay = Math.max(delay, delay(compileCached(path)));
+                    }
+                }
+            } catch (JsonProcessingException ex) {
+                // Reported when the query is evaluated
+            }
+            return delay;
+        }
+        if (trimmedQuery.startsWith("!")) {
+            return 0;
+        }
+        return delay(compileCached(trimmedQuery));
+    }
+
+    private long delay(CompiledQuery compiledQuery) {
+        if (compiledQuery == null || !compiledQuery.isTimeDependent()) {
+            return 0;
+        }
+        DecryptedSyncData syncData = bitwardenClient.getSyncData();
+        if (syncData == null) {
+            return 0;
+        }
+        DecryptedCipherData dcd;
+        if (compiledQuery.entryId() != null) {
+            dcd = syncData.getCipher(compiledQuery.entryId());
+        } else {
+            List<DecryptedCipherData> candidates = compiledQuery.resolve(syncData);
+            dcd = candidates.size() == 1 ? candidates.get(0) : null;
+        }
+        // The TOTP period of entries, that may not be accessed, is not
+        // revealed through the delay
+        if (dcd == null || !isAccessAllowed(dcd.getId())) {
+            return 0;
+        }
+        return compiledQuery.delay(dcd);
+    }
+
+    private String evaluateBatch(String query) {
+        List<String> paths;
+        try {
+            paths = objectMapper.readValue(query, PATH_LIST);
+        } catch (JsonProcessingException ex) {
+            LOG.log(Level.WARNING, "Batch query is not a JSON array of strings: {0}", ex.getOriginalMessage());
+            return "";
+        }
+        DecryptedSyncData[] syncData = new DecryptedSyncData[1];
+        boolean[] syncDataLoaded = new boolean[1];
+        Supplier<DecryptedSyncData> snapshot = () -> {
+            if (!syncDataLoaded[0]) {
+                syncData[0] = bitwardenClient.getSyncData();
+                syncDataLoaded[0] = true;
+            }
+            return syncData[0];
+        };
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String path : paths) {
+            if (path == null) {
+                continue;
+            }
+            CompiledQuery compiledQuery = compile(path);
+            result.put(path, compiledQuery == null ? "" : evaluate(compiledQuery, path, snapshot));
+        }
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException ex) {
+            LOG.log(Level.ERROR, (String) null, ex);
+            return "";
+        }
+    }
+
+    /**
+     * Neither decrypts nor locks anything, so it is cheap to call on every
+     * poll.
+     */
+    long generation() {
+        return epoch + bitwardenClient.getSyncGeneration() + ACCESS_GENERATION.get();
+    }
+
+    private String evaluateIfChanged(String arguments) {
+        int separator = arguments.indexOf(' ');
+        long knownGeneration;
+        try {
+            knownGeneration = Long.parseLong(separator < 0 ? arguments : arguments.substring(0, separator));
+        } catch (NumberFormatException ex) {
+            LOG.log(Level.WARNING, "Conditional query does not have expected format (!if-changed GENERATION QUERY): {0}", arguments);
+            return "";
+        }
+        // Read before the evaluation, a change during the evaluation is then
+        // reported again on the next poll instead of being lost
+        long currentGeneration = generation();
+        String query = separator < 0 ? "" : arguments.substring(separator + 1);
+        if (currentGeneration == knownGeneration && !isTimeDependent(query)) {
+            return UNCHANGED;
+        }
+        return currentGeneration + "\n" + evaluate(query);
+    }
+
+    /**
+     * @return {@code true} if the answer to the query can change without a
+     *         change of the generation
+     */
+    private boolean isTimeDependent(String query) {
+        String trimmedQuery = query.trim();
+        if (trimmedQuery.startsWith("[")) {
+            try {
+                for (String path : objectMapper.readValue(trimmedQuery, PATH_LIST)) {
+                    if (path != null && isTimeDependent(path)) {
+                        return true;
+                    }
+                }
+            } catch (JsonProcessingException ex) {
+                // Reported when the query is evaluated
+            }
+            return false;
+        }
+        if (trimmedQuery.startsWith("!")) {
+            return false;
+        }
+        CompiledQuery compiledQuery = compileCached(trimmedQuery);
+        return compiledQuery != null && compiledQuery.isTimeDependent();
+    }
+
+    private String evaluateUrl(String url) {
+        DecryptedSyncData syncData = bitwardenClient.getSyncData();
+        List<Map<String, String>> result = new ArrayList<>();
+        if (syncData != null) {
+            for (DecryptedCipherData dcd : syncData.getCiphersForUrl(url)) {
+                if (isAccessAllowed(dcd.getId())) {
+                    Map<String, String> entry = new LinkedHashMap<>();
+                    entry.put("id", dcd.getId());
+                    entry.put("name", dcd.getName());
+                    result.add(entry);
+                }
+            }
+        }
+        try {
+            return objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException ex) {
+            LOG.log(Level.ERROR, (String) null, ex);
+            return "";
+        }
+    }
+
+    /**
+     * Compile a query path. Polling clients send the same queries over and
+     * over, so compiled queries are cached.
+     */
+    private CompiledQuery compile(String path) {
+        CompiledQuery compiledQuery = compileCached(path);
+        if (compiledQuery == null) {
+            LOG.log(Level.WARNING, "Entry does not have expected format (ENTRYID/AREA/ATTRIBUTE): {0}", path);
+        }
+        return compiledQuery;
+    }
+
+    /**
+     * @return the compiled query or {@code null} if the path is invalid, an
+     *         invalid path is not reported
+     */
+    private CompiledQuery compileCached(String path) {
+        CompiledQuery compiledQuery = compiledQueries.get(path);
+        if (compiledQuery == null) {
+            compiledQuery = CompiledQuery.compile(path);
+            if (compiledQuery != null) {
+                compiledQueries.put(path, compiledQuery);
+            }
+        }
+        return compiledQuery;
+    }
+
+    private boolean isAccessAllowed(String id) {
+        return allowAccess.contains(id) || Configuration.getConfiguration().isAllowAllAccess();
+    }
+
+    /**
+     * @param snapshot supplies the vault snapshot, it is only queried if
+     *                 access is possible
+     */
+    private String evaluate(CompiledQuery compiledQuery, String query, Supplier<DecryptedSyncData> snapshot) {
+        DecryptedCipherData dcd;
+        if (compiledQuery.entryId() != null) {
+            if (!isAccessAllowed(compiledQuery.entryId())) {
+                return "";
+            }
+            DecryptedSyncData syncData = snapshot.get();
+            dcd = syncData != null ? syncData.getCipher(compiledQuery.entryId()) : null;
+            if (dcd == null) {
+                return "-";
+            }
+        } else {
+            DecryptedSyncData syncData = snapshot.get();
+            List<DecryptedCipherData> candidates = syncData != null ? compiledQuery.resolve(syncData) : List.of();
+            if (candidates.size() != 1) {
+                if (candidates.size() > 1) {
+                    LOG.log(Level.WARNING, "Selector matches {0} entries: {1}", candidates.size(), query);
+                }
+                return Configuration.getConfiguration().isAllowAllAccess() ? "-" : "";
+            }
+            dcd = candidates.get(0);
+            if (!isAccessAllowed(dcd.getId())) {
+                return "";
+            }
+        }
+        try {
+            String result = compiledQuery.apply(dcd);
+            return result != null ? result : "";
+        } catch (DecryptionFailedException ex) {
+            // Reported like an entry, that could not be decrypted at all
+            LOG.log(Level.WARNING, "Failed to decrypt value for query: {0}", query);
+            return "-";
+        } catch (RuntimeException ex) {
+            LOG.log(Level.WARNING, "Failed to evaluate query: {0}", query);
+            return "";
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import eu.doppelhelix.app.bitwardenagent.impl.BitwardenClient;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.net.ProtocolException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Socket server multiplexing all connections on a single selector thread.
+ *
+ * <p>The event loop only moves bytes. Queries are evaluated on virtual
+ * threads, one batch per connection at a time, so that responses keep the
+ * order of the queries. A delayed query (see
+ * {@link QueryEvaluator#evaluateAsync(String)}) does not occupy a thread
+ * while the batch waits for it. Reading from a connection is suspended while
+ * too much output is pending for it.</p>
+ */
+public class SelectorSocketServer extends AbstractSocketServer {
+
+    private static final System.Logger LOG = System.getLogger(SelectorSocketServer.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_PENDING_OUTPUT = 1024 * 1024;
+    private static final long TIMEOUT_CHECK_INTERVAL = 1000;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Only used by the event loop, so a single buffer serves all connections
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final Queue<Connection> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private volatile Selector selector;
+    private int connectionCount;
+
+    public SelectorSocketServer(BitwardenClient bitwardenClient) {
+        this(bitwardenClient, defaultSocketDirectory());
+    }
+
+    public SelectorSocketServer(BitwardenClient bitwardenClient, Path socketDirectory) {
+        super(bitwardenClient, socketDirectory);
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        running = false;
+        Selector currentSelector = selector;
+        if (currentSelector != null) {
+            currentSelector.wakeup();
+        }
+        try {
+            join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            LOG.log(Level.ERROR, (String) null, ex);
+        }
+    }
+
+    @Override
+    public void run() {
+        Path socketPath;
+        try {
+            socketPath = prepareSocketPath();
+        } catch (IOException ex) {
+            LOG.log(Level.ERROR, "Failed to create socket directory: " + socketDirectory, ex);
+            return;
+        }
+        try (Selector localSelector = Selector.open();
+                ServerSocketChannel listenChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            listenChannel.bind(UnixDomainSocketAddress.of(socketPath));
+            listenChannel.configureBlocking(false);
+            listenChannel.register(localSelector, SelectionKey.OP_ACCEPT);
+            selector = localSelector;
+            LOG.log(Level.INFO, "Started UnixDomainSocket server (selector)");
+            long lastTimeoutCheck = System.currentTimeMillis();
+            while (running) {
+                localSelector.select(TIMEOUT_CHECK_INTERVAL);
+                Connection updated;
+                while ((updated = pendingUpdates.poll()) != null) {
+                    updated.evaluated();
+                }
+                Iterator<SelectionKey> selectedKeys = localSelector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(listenChannel, localSelector);
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.write();
+                    }
+                }
+                // Walking all connections after every select would cost
+                // O(connections) per event, timeouts only need to be checked
+                // about once per interval
+                long now = System.currentTimeMillis();
+                if (now - lastTimeoutCheck >= TIMEOUT_CHECK_INTERVAL) {
+                    closeExpiredConnections(localSelector, now);
+                    lastTimeoutCheck = now;
+                }
+            }
+            for (SelectionKey key : localSelector.keys()) {
+                if (key.attachment() instanceof Connection connection) {
+                    connection.close();
+                }
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.ERROR, (String) null, ex);
+        } finally {
+            selector = null;
+            try {
+                Files.deleteIfExists(socketPath);
+            } catch (IOException ex) {
+                LOG.log(Level.ERROR, (String) null, ex);
+            }
+            LOG.log(Level.INFO, "Shutted down UnixDomainSocket server (selector)");
+        }
+    }
+
+    /**
+     * Accept all pending connections. Only a failure of the listening channel
+     * ends the event loop, a connection, that can not be set up, is closed.
+     */
+    private void accept(ServerSocketChannel listenChannel, Selector localSelector) throws IOException {
+        SocketChannel channel;
+        while ((channel = listenChannel.accept()) != null) {
+            if (connectionCount >= maxConnections) {
+                rejectBusy(channel);
+                continue;
+            }
+            try {
+                channel.configureBlocking(false);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(localSelector, SelectionKey.OP_READ, connection);
+                connectionCount++;
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "Failed to set up connection", ex);
+                try {
+                    channel.close();
+                } catch (IOException closeEx) {
+                    LOG.log(Level.DEBUG, "Failed to close connection", closeEx);
+                }
+            }
+        }
+    }
+
+    private void closeExpiredConnections(Selector localSelector, long now) {
+        for (SelectionKey key : localSelector.keys()) {
+            if (key.attachment() instanceof Connection connection && connection.isExpired(now)) {
+                LOG.log(Level.DEBUG, "Closed connection after timeout");
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * State of a single client connection. Apart from {@link #output},
+     * {@link #pendingOutput} and {@link #evaluating} it is only accessed from
+     * the event loop.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final QueryDecoder decoder = new QueryDecoder();
+        private final Queue<String> queries = new ArrayDeque<>();
+        private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingOutput = new AtomicInteger();
+        private volatile boolean evaluating;
+        private SelectionKey key;
+        private long lastActivity = System.currentTimeMillis();
+        private boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() {
+            readBuffer.clear();
+            try {
+                if (channel.read(readBuffer) < 0) {
+                    decoder.endOfInput();
+                } else {
+                    readBuffer.flip();
+                    decoder.append(readBuffer);
+                }
+            } catch (ProtocolException ex) {
+                LOG.log(Level.WARNING, "{0}, closing connection", ex.getMessage());
+                close();
+                return;
+            } catch (IOException ex) {
+                LOG.log(Level.DEBUG, "Failed to read from connection", ex);
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            try {
+                String query;
+                while ((query = decoder.nextQuery()) != null) {
+                    queries.add(query);
+                }
+            } catch (ProtocolException ex) {
+                LOG.log(Level.WARNING, "{0}, closing connection", ex.getMessage());
+                close();
+                return;
+            }
+            updateInterest();
+        }
+
+        void write() {
+            try {
+                ByteBuffer bb;
+                while ((bb = output.peek()) != null) {
+                    int written = channel.write(bb);
+                    pendingOutput.addAndGet(-written);
+                    if (bb.hasRemaining()) {
+                        break;
+                    }
+                    BufferPool.release(output.poll());
+                }
+            } catch (IOException ex) {
+                LOG.log(Level.DEBUG, "Failed to write to connection", ex);
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            updateInterest();
+        }
+
+        /**
+         * Start the evaluation of pending queries, adjust the operations of
+         * interest and close the connection once it is done.
+         */
+        void updateInterest() {
+            if (closed) {
+                return;
+            }
+            if (!evaluating && !queries.isEmpty()) {
+                dispatch();
+            }
+            boolean idle = !evaluating && queries.isEmpty() && output.isEmpty();
+            if (idle && decoder.isComplete()) {
+                close();
+                return;
+            }
+            int interestOps = 0;
+            if (!decoder.isEndOfInput() && !decoder.isComplete() && pendingOutput.get() < MAX_PENDING_OUTPUT) {
+                interestOps |= SelectionKey.OP_READ;
+            }
+            if (!output.isEmpty()) {
+                interestOps |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(interestOps);
+        }
+
+        private void dispatch() {
+            List<String> batch = new ArrayList<>(queries);
+            queries.clear();
+            evaluating = true;
+            executor.execute(() -> {
+                List<CompletableFuture<String>> results = new ArrayList<>(batch.size());
+                try {
+                    for (String query : batch) {
+                        results.add(queryEvaluator.evaluateAsync(query));
+                    }
+                } catch (RuntimeException ex) {
+                    results.add(CompletableFuture.failedFuture(ex));
+                }
+                // Delayed queries complete on their own, no thread waits
+                // for them
+                CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                        .whenComplete((ignored, failure) -> completeBatch(results));
+            });
+        }
+
+        private void completeBatch(List<CompletableFuture<String>> results) {
+            try {
+                for (CompletableFuture<String> result : results) {
+                    String value = result.exceptionally(ex -> {
+                        LOG.log(Level.ERROR, (String) null, ex);
+                        return "";
+                    }).join();
+                    decoder.encode(value, bb -> {
+                        pendingOutput.addAndGet(bb.remaining());
+                        output.add(bb);
+                    });
+                }
+            } finally {
+                evaluating = false;
+                pendingUpdates.add(this);
+                Selector currentSelector = selector;
+                if (currentSelector != null) {
+                    currentSelector.wakeup();
+                }
+            }
+        }
+
+        /**
+         * The write timeout starts once the evaluation finished, so a slow
+         * query does not count against the client.
+         */
+        void evaluated() {
+            lastActivity = System.currentTimeMillis();
+            updateInterest();
+        }
+
+        boolean isExpired(long now) {
+            if (evaluating) {
+                return false;
+            }
+            // Pending output has to be read by the client within the read
+            // timeout, like a started query has to be sent
+            int timeout = decoder.isIdle() && output.isEmpty() ? idleTimeout : readTimeout;
+            return now - lastActivity > timeout;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connectionCount--;
+            ByteBuffer bb;
+            while ((bb = output.poll()) != null) {
+                BufferPool.release(bb);
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                LOG.log(Level.ERROR, (String) null, ex);
+            }
+        }
+    }
+}
@@ -15,66 +15,50 @@
  */
 package eu.doppelhelix.app.bitwardenagent.server;
 
-import eu.doppelhelix.app.bitwardenagent.Configuration;
 import eu.doppelhelix.app.bitwardenagent.impl.BitwardenClient;
-import eu.doppelhelix.app.bitwardenagent.impl.DecryptedCipherData;
-import eu.doppelhelix.app.bitwardenagent.impl.DecryptedFieldData;
-import eu.doppelhelix.app.bitwardenagent.impl.TOTPUtil;
 import java.io.IOException;
 import java.lang.System.Logger.Level;
 import java.net.StandardProtocolFamily;
 import java.net.UnixDomainSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Objects;
-import java.util.Set;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 
-import static eu.doppelhelix.app.bitwardenagent.Configuration.PROP_ALLOW_ACCESS;
-import static eu.doppelhelix.app.bitwardenagent.impl.Util.isWindows;
-import static java.nio.charset.StandardCharsets.UTF_8;
 
-
-public class UnixDomainSocketServer extends Thread {
+/**
+ * Socket server using blocking channels, each connection is handled on its own
+ * virtual thread.
+ */
+public class UnixDomainSocketServer extends AbstractSocketServer {
 
     private static final System.Logger LOG = System.getLogger(UnixDomainSocketServer.class.getName());
 
-    private final Executor executor = Executors.newWorkStealingPool(10);
-    private final Path socketDirectory;
-    private final BitwardenClient bitwardenClient;
-    private Set<String> allowAccess = Collections.synchronizedSet(new HashSet<>());
+    // Shared between server instances, the server is recreated when it is
+    // toggled from the UI
+    private static final ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "UnixDomainSocketServer timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
     private volatile ServerSocketChannel listenChannel;
 
     public UnixDomainSocketServer(BitwardenClient bitwardenClient) {
-        this(
-                bitwardenClient,
-                isWindows()
-                ? Path.of(System.getenv("LOCALAPPDATA"), "BitwardenAgent", "sockets")
-                : Path.of(System.getenv("HOME"), ".cache/BitwardenAgent", "sockets")
-        );
+        this(bitwardenClient, defaultSocketDirectory());
     }
 
     public UnixDomainSocketServer(BitwardenClient bitwardenClient, Path socketDirectory) {
-        setDaemon(true);
-        this.bitwardenClient = bitwardenClient;
-        this.socketDirectory = socketDirectory;
-        allowAccess.addAll(Configuration.getConfiguration().getAllowAccess());
-        Configuration.getConfiguration().addObserver((name, value) -> {
-            if (PROP_ALLOW_ACCESS.equals(name)) {
-                allowAccess.addAll((Collection<String>) value);
-                allowAccess.retainAll((Collection<String>) value);
-            }
-        });
+        super(bitwardenClient, socketDirectory);
     }
 
+    @Override
     @SuppressWarnings("SleepWhileInLoop")
     public void shutdown() throws IOException {
         // Ensure the mainloop was entered first, so that normal shutdown can be used
@@ -102,45 +86,28 @@ public class UnixDomainSocketServer extends Thread {
     @Override
     public void run() {
         try {
-            if (!Files.exists(socketDirectory)) {
-                Files.createDirectories(socketDirectory);
-            }
-
-            Path socketPath = socketDirectory.resolve("socket");
-            Files.deleteIfExists(socketPath);
+            Path socketPath = prepareSocketPath();
 
             try {
                 UnixDomainSocketAddress udsa = UnixDomainSocketAddress.of(socketPath);
                 listenChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
                 listenChannel.bind(udsa);
                 LOG.log(Level.INFO, "Started UnixDomainSocket server");
+                Semaphore connectionPermits = new Semaphore(maxConnections);
                 while (true) {
                     SocketChannel ch = listenChannel.accept();
+                    // Reject instead of queueing, so that clients fail fast
+                    // and can retry, instead of piling up behind a long queue
+                    if (!connectionPermits.tryAcquire()) {
+                        rejectBusy(ch);
+                        continue;
+                    }
+                    QueryConnection connection = new QueryConnection(ch, queryEvaluator, TIMEOUT_SCHEDULER, readTimeout, idleTimeout);
                     executor.execute(() -> {
-                        try (ch) {
-                            ByteBuffer bb = ByteBuffer.allocate(4096);
-                            ch.read(bb);
-                            bb.flip();
-                            String input = new String(bb.array(), 0, bb.limit());
-                            String[] target = input.trim().split("/", 3);
-                            String result = "";
-                            if (target.length >= 2) {
-                                String id = target[0];
-                                if (allowAccess.contains(id) || Configuration.getConfiguration().isAllowAllAccess()) {
-                                    result = bitwardenClient.getSyncData()
-                                            .getCiphers()
-                                            .stream()
-                                            .filter(dcd -> Objects.equals(id, dcd.getId()))
-                                            .findFirst()
-                                            .map(dcd -> getEntryData(dcd, target))
-                                            .orElse("-");
-                                }
-                            } else {
-                                LOG.log(Level.WARNING, "Entry does not have expected format (ENTRYID/AREA/ATTRIBUTE): {0}", input);
-                            }
-                            ch.write(ByteBuffer.wrap(result.getBytes(UTF_8)));
-                        } catch (IOException ex) {
-                            System.getLogger(UnixDomainSocketServer.class.getName()).log(System.Logger.Level.ERROR, (String) null, ex);
+                        try {
+                            connection.run();
+                        } finally {
+                            connectionPermits.release();
                         }
                     });
                 }
@@ -154,87 +121,4 @@ public class UnixDomainSocketServer extends Thread {
             LOG.log(Level.ERROR, "Failed to create socket directory: " + socketDirectory, ex);
         }
     }
-
-    private String getEntryData(DecryptedCipherData dcd, String[] target) {
-        return switch (target[1]) { // area
-            case "login" ->
-                switch (target[2]) { // detail level 1
-                    case "username" -> dcd.getLogin().getUsername();
-                    case "password" -> dcd.getLogin().getPassword();
-                    case "totp" -> dcd.getLogin().getTotp();
-                    case "totpToken" -> TOTPUtil.calculateTOTP(dcd.getLogin().getTotp());
-                    default -> "";
-                };
-            case "sshKey" ->
-                switch (target[2]) { // detail level 1
-                    case "keyFingerprint" -> dcd.getSshKey().getKeyFingerprint();
-                    case "privateKey" -> dcd.getSshKey().getPrivateKey();
-                    case "publicKey" -> dcd.getSshKey().getPublicKey();
-                    default -> "";
-                };
-            case "card" ->
-                switch(target[2]) { // detail level 1
-                    case "brand" -> dcd.getCard().getBrand();
-                    case "cardholderName" -> dcd.getCard().getCardholderName();
-                    case "number" -> dcd.getCard().getNumber();
-                    case "code" -> dcd.getCard().getCode();
-                    case "expMonth" -> dcd.getCard().getExpMonth();
-                    case "expYear" -> dcd.getCard().getExpYear();
-                    default -> "";
-                };
-            case "identity" ->
-                switch (target[2]) { // detail level 1
-                    case "title" -> dcd.getIdentity().getTitle();
-                    case "firstName" -> dcd.getIdentity().getFirstName();
-                    case "middleName" -> dcd.getIdentity().getMiddleName();
-                    case "lastName" -> dcd.getIdentity().getLastName();
-                    case "address1" -> dcd.getIdentity().getAddress1();
-                    case "address2" -> dcd.getIdentity().getAddress2();
-                    case "address3" -> dcd.getIdentity().getAddress3();
-                    case "city" -> dcd.getIdentity().getCity();
-                    case "state" -> dcd.getIdentity().getState();
-                    case "postalCode" -> dcd.getIdentity().getPostalCode();
-                    case "country" -> dcd.getIdentity().getCountry();
-                    case "company" -> dcd.getIdentity().getCompany();
-                    case "email" -> dcd.getIdentity().getEmail();
-                    case "phone" -> dcd.getIdentity().getPhone();
-                    case "ssn" -> dcd.getIdentity().getSsn();
-                    case "username" -> dcd.getIdentity().getUsername();
-                    case "passportNumber" -> dcd.getIdentity().getPassportNumber();
-                    case "licenseNumber" -> dcd.getIdentity().getLicenseNumber();
-                    default -> "";
-                };
-            case "notes" -> dcd.getNotes();
-            case "fields" -> {
-                DecryptedFieldData dfd = null;
-                int separator = target[2].lastIndexOf("/");
-                String fieldReference = target[2].substring(0, separator);
-                String fieldAttribute = target[2].substring(separator + 1);
-                for (DecryptedFieldData dfdCandidate : dcd.getFields()) {
-                    if(fieldReference.equals(dfdCandidate.getName())) {
-                        dfd = dfdCandidate;
-                        break;
-                    }
-                }
-                if(dfd == null) {
-                    try {
-                        int fieldIndex = Integer.parseInt(fieldReference);
-                        dfd = dcd.getFields().get(fieldIndex);
-                    } catch (NumberFormatException ex) {
-                    }
-                }
-                if(dfd == null) {
-                    yield "";
-                }
-                yield switch(fieldAttribute) {
-                    case "linkedId" -> dfd.getLinkedId().name();
-                    case "name" -> dfd.getName();
-                    case "value" -> dfd.getValue();
-                    case "type" -> dfd.getType().name();
-                    default -> "";
-                };
-            }
-            default -> "";
-        };
-    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EncStringTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testParseAesCbcHmac() {
+        EncString encString = EncString.parse("2.AAAA|AQID|BAUG");
+        assertEquals(2, encString.encryptionType());
+        assertArrayEquals(new byte[]{0, 0, 0}, encString.iv());
+        assertArrayEquals(new byte[]{1, 2, 3}, encString.data());
+        assertArrayEquals(new byte[]{4, 5, 6}, encString.mac());
+        assertEquals("2.AAAA|AQID|BAUG", encString.toEncodedString());
+    }
+
+    @Test
+    public void testParseRsa() {
+        EncString encString = EncString.parse("4.AQID");
+        assertEquals(4, encString.encryptionType());
+        assertNull(encString.iv());
+        assertArrayEquals(new byte[]{1, 2, 3}, encString.data());
+        assertNull(encString.mac());
+        assertEquals("4.AQID", encString.toEncodedString());
+    }
+
+    @Test
+    public void testParseInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> EncString.parse("dummy"));
+        assertThrows(IllegalArgumentException.class, () -> EncString.parse("2.AAAA|AQID"));
+        assertThrows(IllegalArgumentException.class, () -> EncString.parse("9.AAAA"));
+    }
+
+    @Test
+    public void testParseLenient() throws JsonProcessingException {
+        EncString encString = EncString.parseLenient("7.AAAA|AQID");
+        assertEquals(EncString.TYPE_INVALID, encString.encryptionType());
+        assertFalse(encString.isValid());
+        assertEquals("7.AAAA|AQID", encString.toEncodedString());
+        PasswordHistoryEntry phe = objectMapper.readValue("{\"password\": \"7.AAAA|AQID\"}", PasswordHistoryEntry.class);
+        assertEquals(encString, phe.password());
+        assertEquals("\"7.AAAA|AQID\"", objectMapper.writeValueAsString(phe.password()));
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws JsonProcessingException {
+        PasswordHistoryEntry phe = objectMapper.readValue("{\"password\": \"2.AAAA|AQID|BAUG\"}", PasswordHistoryEntry.class);
+        assertEquals(EncString.parse("2.AAAA|AQID|BAUG"), phe.password());
+        assertEquals("\"2.AAAA|AQID|BAUG\"", objectMapper.writeValueAsString(phe.password()));
+        assertNull(objectMapper.readValue("{\"password\": null}", PasswordHistoryEntry.class).password());
+    }
+}
@@ -30,18 +30,18 @@ public class UriDataTest {
 
     @Test
     public void testDecode() throws JsonProcessingException {
-        UriData uriData = objectMapper.readValue("{\"uri\": \"dummy\", \"uriChecksum\": \"Test\", \"match\": 2}", UriData.class);
+        UriData uriData = objectMapper.readValue("{\"uri\": \"2.AAAA|AQID|BAUG\", \"uriChecksum\": \"2.BBBB|CCCC|DDDD\", \"match\": 2}", UriData.class);
         assertNotNull(uriData);
         assertEquals(UriMatchType.STARTS_WITH, uriData.match());
-        assertEquals("dummy", uriData.uri());
-        assertEquals("Test", uriData.uriChecksum());
+        assertEquals("2.AAAA|AQID|BAUG", uriData.uri().toEncodedString());
+        assertEquals("2.BBBB|CCCC|DDDD", uriData.uriChecksum().toEncodedString());
     }
 
     @Test
     public void testNullMatchDecode() throws JsonProcessingException {
         // API maps "STANDARD" Matching to NULL, we map it to an enum value here
 
-        UriData uriData = objectMapper.readValue("{\"uri\": \"dummy\", \"uriChecksum\": \"Test\", \"match\": null}", UriData.class);
+        UriData uriData = objectMapper.readValue("{\"uri\": \"2.AAAA|AQID|BAUG\", \"uriChecksum\": \"2.BBBB|CCCC|DDDD\", \"match\": null}", UriData.class);
         assertNotNull(uriData);
         assertEquals(UriMatchType.STANDARD, uriData.match());
 
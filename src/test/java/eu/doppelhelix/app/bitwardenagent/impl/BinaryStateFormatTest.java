@@ -0,0 +1,159 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.doppelhelix.app.bitwardenagent.http.CipherData;
+import eu.doppelhelix.app.bitwardenagent.http.Collection;
+import eu.doppelhelix.app.bitwardenagent.http.DomainsData;
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
+import eu.doppelhelix.app.bitwardenagent.http.FieldData;
+import eu.doppelhelix.app.bitwardenagent.http.FieldType;
+import eu.doppelhelix.app.bitwardenagent.http.Folder;
+import eu.doppelhelix.app.bitwardenagent.http.GlobalEquivalentDomain;
+import eu.doppelhelix.app.bitwardenagent.http.LinkedId;
+import eu.doppelhelix.app.bitwardenagent.http.LoginData;
+import eu.doppelhelix.app.bitwardenagent.http.OrganzationData;
+import eu.doppelhelix.app.bitwardenagent.http.PreloginResult;
+import eu.doppelhelix.app.bitwardenagent.http.ProfileData;
+import eu.doppelhelix.app.bitwardenagent.http.SyncData;
+import eu.doppelhelix.app.bitwardenagent.http.UriData;
+import eu.doppelhelix.app.bitwardenagent.http.UriMatchType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryStateFormatTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testRoundTrip(boolean compress) throws Exception {
+        OffsetDateTime revision = OffsetDateTime.parse("2026-03-01T12:30:45.123456+02:00");
+        ClientState state = state(50, revision);
+        SyncData syncData = state.getSyncData();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryStateFormat.write(state, output, compress);
+        ClientState result = BinaryStateFormat.read(new ByteArrayInputStream(output.toByteArray()));
+
+        assertEquals(state.getClientId(), result.getClientId());
+        assertEquals(state.getBaseUri(), result.getBaseUri());
+        assertEquals(state.getEmail(), result.getEmail());
+        assertEquals(state.getRefreshToken(), result.getRefreshToken());
+        assertEquals(state.getPreloginResult(), result.getPreloginResult());
+        assertEquals(syncData, result.getSyncData());
+        assertEquals(revision.getOffset(), result.getSyncData().ciphers().get(0).revisionDate().getOffset());
+
+        byte[] json = new ObjectMapper().findAndRegisterModules().writeValueAsBytes(state);
+        assertTrue(output.size() < json.length / 2, "binary: " + output.size() + ", json: " + json.length);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "{}", "BWAS"})
+    public void testInvalidInput(String input) {
+        assertThrows(IOException.class, () -> BinaryStateFormat.read(new ByteArrayInputStream(input.getBytes())));
+    }
+
+    @Test
+    public void testUnknownEnumConstantIsReadAsNull() throws Exception {
+        ClientState state = state(3, OffsetDateTime.parse("2026-03-01T12:30:45Z"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryStateFormat.write(state, output, false);
+        // Simulate a constant, that was removed from the enum, the string
+        // table holds each name once
+        String binary = output.toString(StandardCharsets.ISO_8859_1);
+        assertEquals(binary.indexOf("HOST"), binary.lastIndexOf("HOST"));
+        byte[] patched = binary.replace("HOST", "GONE").getBytes(StandardCharsets.ISO_8859_1);
+
+        ClientState result = BinaryStateFormat.read(new ByteArrayInputStream(patched));
+
+        CipherData cipher = result.getSyncData().ciphers().get(0);
+        assertNull(cipher.login().uris().get(0).match());
+        assertEquals(state.getSyncData().ciphers().get(0).login().uris().get(0).uri(), cipher.login().uris().get(0).uri());
+        assertEquals(state.getSyncData().ciphers().size(), result.getSyncData().ciphers().size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testValuesLargerThanBuffer(boolean compress) throws Exception {
+        ClientState state = state(1, OffsetDateTime.parse("2026-03-01T12:30:45Z"));
+        state.setEmail("x".repeat(200_000) + "@example.com");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryStateFormat.write(state, output, compress);
+
+        ClientState result = BinaryStateFormat.read(new ByteArrayInputStream(output.toByteArray()));
+
+        assertEquals(state.getEmail(), result.getEmail());
+        assertEquals(state.getSyncData(), result.getSyncData());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testTruncatedInput(boolean compress) throws Exception {
+        ClientState state = state(50, OffsetDateTime.parse("2026-03-01T12:30:45Z"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryStateFormat.write(state, output, compress);
+        byte[] truncated = Arrays.copyOf(output.toByteArray(), output.size() / 2);
+
+        assertThrows(IOException.class, () -> BinaryStateFormat.read(new ByteArrayInputStream(truncated)));
+    }
+
+    private static ClientState state(int cipherCount, OffsetDateTime revision) throws Exception {
+        EncryptionKey key = new EncryptionKey(new byte[32], new byte[32]);
+        List<CipherData> ciphers = new ArrayList<>();
+        for (int i = 0; i < cipherCount; i++) {
+            LoginData login = new LoginData(null, encrypt(key, "user" + i), encrypt(key, "password" + i), null,
+                    List.of(new UriData(encrypt(key, "https://example.com/" + i), null, UriMatchType.HOST)));
+            FieldData field = new FieldData(FieldType.LINKED, encrypt(key, "field"), null, LinkedId.PASSWORD);
+            ciphers.add(new CipherData("cipher" + i, encrypt(key, "Cipher " + i), i % 2 == 0 ? "org" : null, null, login, null, null, null,
+                    List.of(field), "folder", List.of("collection"), revision, revision, null, null, List.of()));
+        }
+        SyncData syncData = new SyncData(
+                new ProfileData("user", "dummy@example.com", "Dummy", encrypt(key, "key"), null, List.of(new OrganzationData("org", encrypt(key, "org key"), "Organization"))),
+                ciphers,
+                List.of(new Folder("folder", encrypt(key, "Folder"), revision)),
+                List.of(new Collection(false, true, false, "collection", "org", encrypt(key, "Collection"))),
+                new DomainsData(List.of(List.of("example.com", "example.org")), List.of(new GlobalEquivalentDomain(1, List.of("a.com", "b.com"), true)))
+        );
+        ClientState state = new ClientState();
+        state.setClientId(UUID.randomUUID());
+        state.setBaseUri(URI.create("https://vault.example.com"));
+        state.setEmail("dummy@example.com");
+        state.setRefreshToken(UtilCryto.encryptString(key, "refresh"));
+        state.setSyncData(syncData);
+        state.setPreloginResult(new PreloginResult(PreloginResult.KDF.Argon2Id, 3, 64, null));
+        return state;
+    }
+
+    private static EncString encrypt(EncryptionKey key, String value) throws Exception {
+        return EncString.parse(UtilCryto.encryptString(key, value));
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LazyDecryptedStringTest {
+
+    @Test
+    public void testDecrypt() throws Exception {
+        EncryptionKey key = new EncryptionKey(new byte[32], new byte[32]);
+        LazyDecryptedString value = LazyDecryptedString.ofEncrypted(key, EncString.parse(UtilCryto.encryptString(key, "secret")));
+
+        assertEquals("secret", value.get());
+        assertEquals("secret", value.get());
+    }
+
+    @Test
+    public void testFailureIsReportedOnEveryAccess() throws Exception {
+        EncryptionKey key = new EncryptionKey(new byte[32], new byte[32]);
+        byte[] otherMacKey = new byte[32];
+        otherMacKey[0] = 1;
+        EncryptionKey otherKey = new EncryptionKey(new byte[32], otherMacKey);
+        LazyDecryptedString value = LazyDecryptedString.ofEncrypted(otherKey, EncString.parse(UtilCryto.encryptString(key, "secret")));
+
+        DecryptionFailedException first = assertThrows(DecryptionFailedException.class, value::get);
+        DecryptionFailedException second = assertThrows(DecryptionFailedException.class, value::get);
+        assertSame(first, second);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class OrganizationKeysTest {
+
+    @Test
+    public void testKeyIsUnwrappedOnce() throws Exception {
+        EncString wrappedKey = EncString.parse("4.AQID");
+        Map<EncString, EncryptionKey> keyCache = new ConcurrentHashMap<>();
+        AtomicInteger unwrapCount = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        OrganizationKeys.KeyUnwrapper unwrapper = (privateKey, wk) -> {
+            unwrapCount.incrementAndGet();
+            return new EncryptionKey(new byte[32], new byte[32]);
+        };
+        OrganizationKeys organizationKeys = new OrganizationKeys(null, Map.of("org", wrappedKey), keyCache, unwrapper);
+
+        List<Future<EncryptionKey>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return organizationKeys.get("org");
+                }));
+            }
+            start.countDown();
+        }
+        EncryptionKey key = results.get(0).get();
+        for (Future<EncryptionKey> result : results) {
+            assertSame(key, result.get());
+        }
+        assertEquals(1, unwrapCount.get());
+        assertNull(organizationKeys.get("other"));
+
+        // The next sync shares the cache, an unchanged key is not unwrapped again
+        OrganizationKeys unchanged = new OrganizationKeys(null, Map.of("org", EncString.parse("4.AQID")), keyCache, unwrapper);
+        assertSame(key, unchanged.get("org"));
+        assertEquals(1, unwrapCount.get());
+
+        OrganizationKeys rotated = new OrganizationKeys(null, Map.of("org", EncString.parse("4.BAUG")), keyCache, unwrapper);
+        rotated.get("org");
+        assertEquals(2, unwrapCount.get());
+    }
+
+    @Test
+    public void testUnwrapFailure() {
+        OrganizationKeys organizationKeys = new OrganizationKeys(null, Map.of("org", EncString.parse("4.AQID")), new ConcurrentHashMap<>(), (privateKey, wk) -> {
+            throw new GeneralSecurityException("Dummy");
+        });
+        GeneralSecurityException ex = assertThrows(GeneralSecurityException.class, () -> organizationKeys.get("org"));
+        assertEquals("Dummy", ex.getMessage());
+    }
+}
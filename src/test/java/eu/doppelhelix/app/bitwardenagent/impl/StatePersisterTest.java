@@ -0,0 +1,114 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatePersisterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testLatestStateIsWritten() throws Exception {
+        Path target = directory.resolve("config").resolve("state.bin");
+        // The debounce delay does not elapse during the test
+        StatePersister persister = new StatePersister(target, TimeUnit.HOURS.toMillis(1));
+
+        persister.store(state("first@example.com"));
+        persister.store(state("second@example.com"));
+        assertFalse(Files.exists(target));
+        assertTrue(persister.flush());
+        assertFalse(persister.flush());
+
+        try (InputStream is = Files.newInputStream(target)) {
+            assertEquals("second@example.com", BinaryStateFormat.read(is).getEmail());
+        }
+        try (Stream<Path> files = Files.list(target.getParent())) {
+            assertEquals(List.of(target), files.toList());
+        }
+    }
+
+    @Test
+    public void testStateIsKeptWhenWritingFails() throws Exception {
+        // A file in place of the directory makes writing fail
+        Path blocked = Files.createFile(directory.resolve("config"));
+        Path target = blocked.resolve("state.bin");
+        StatePersister persister = new StatePersister(target, TimeUnit.HOURS.toMillis(1));
+
+        persister.store(state("first@example.com"));
+        assertFalse(persister.flush());
+
+        Files.delete(blocked);
+        assertTrue(persister.flush());
+        try (InputStream is = Files.newInputStream(target)) {
+            assertEquals("first@example.com", BinaryStateFormat.read(is).getEmail());
+        }
+    }
+
+    @Test
+    public void testFailedWriteIsRetried() throws Exception {
+        Path blocked = Files.createFile(directory.resolve("config"));
+        Path target = blocked.resolve("state.bin");
+        try (StatePersister persister = new StatePersister(target, 10, 50)) {
+            persister.store(state("first@example.com"));
+            // Give the first attempt time to fail, then clear the way for a
+            // retry, no further state is stored
+            Thread.sleep(200);
+            Files.delete(blocked);
+            for (int i = 0; i < 100 && !Files.exists(target); i++) {
+                Thread.sleep(50);
+            }
+            try (InputStream is = Files.newInputStream(target)) {
+                assertEquals("first@example.com", BinaryStateFormat.read(is).getEmail());
+            }
+        }
+    }
+
+    @Test
+    public void testCloseWritesPendingState() throws Exception {
+        Path target = directory.resolve("config").resolve("state.bin");
+        StatePersister persister = new StatePersister(target, TimeUnit.HOURS.toMillis(1));
+
+        persister.store(state("first@example.com"));
+        persister.close();
+        try (InputStream is = Files.newInputStream(target)) {
+            assertEquals("first@example.com", BinaryStateFormat.read(is).getEmail());
+        }
+        // Stored after close, the state is written directly
+        persister.store(state("second@example.com"));
+        try (InputStream is = Files.newInputStream(target)) {
+            assertEquals("second@example.com", BinaryStateFormat.read(is).getEmail());
+        }
+    }
+
+    private static ClientState state(String email) {
+        ClientState state = new ClientState();
+        state.setEmail(email);
+        return state;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.doppelhelix.app.bitwardenagent.http.CipherData;
+import eu.doppelhelix.app.bitwardenagent.http.Collection;
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
+import eu.doppelhelix.app.bitwardenagent.http.Folder;
+import eu.doppelhelix.app.bitwardenagent.http.OrganzationData;
+import eu.doppelhelix.app.bitwardenagent.http.ProfileData;
+import eu.doppelhelix.app.bitwardenagent.http.SyncData;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SyncDataDecryptorTest {
+
+    @Test
+    public void testFolderAndCollectionNamesAreDecryptedOnce() throws Exception {
+        EncryptionKey userKey = new EncryptionKey(new byte[32], new byte[32]);
+        EncryptionKey organizationKey = new EncryptionKey(new byte[32], new byte[32]);
+        EncString wrappedOrganizationKey = EncString.parse("4.AQID");
+        Map<EncString, EncryptionKey> keyCache = new HashMap<>();
+        keyCache.put(wrappedOrganizationKey, organizationKey);
+        OrganizationKeys organizationKeys = new OrganizationKeys(null, Map.of("org", wrappedOrganizationKey), keyCache);
+
+        OffsetDateTime revision = OffsetDateTime.parse("2026-01-01T00:00:00Z");
+        SyncData syncData = new SyncData(
+                new ProfileData("user", "dummy@example.com", "Dummy", null, null, List.of(new OrganzationData("org", wrappedOrganizationKey, "Organization"))),
+                List.of(
+                        cipher(userKey, "c1", null, "f1", List.of(), revision),
+                        cipher(userKey, "c2", null, "f1", List.of(), revision),
+                        cipher(organizationKey, "c3", "org", null, List.of("col1", "col2"), revision)
+                ),
+                List.of(
+                        new Folder("f1", encrypt(userKey, "Folder 1"), revision),
+                        new Folder("f2", encrypt(userKey, "Folder 2"), revision)
+                ),
+                List.of(
+                        new Collection(false, false, false, "col1", "org", encrypt(organizationKey, "Collection 1")),
+                        new Collection(false, false, false, "col2", "org", encrypt(organizationKey, "Collection 2"))
+                ),
+                null
+        );
+
+        AtomicInteger decryptionCount = new AtomicInteger();
+        SyncDataDecryptor decryptor = new SyncDataDecryptor((key, name) -> {
+            decryptionCount.incrementAndGet();
+            return UtilCryto.decryptString(key, name);
+        });
+
+        DecryptedSyncData result = decryptor.decrypt(syncData, userKey, organizationKeys);
+
+        assertEquals(4, decryptionCount.get());
+        assertEquals(Map.of("f1", "Folder 1", "f2", "Folder 2"), result.getFolderNames());
+        assertEquals(Map.of("col1", "Collection 1", "col2", "Collection 2"), result.getCollectionNames());
+        assertEquals("Folder 2", result.getFolder().get(1).getName());
+        assertEquals("Collection 1", result.getCollections().get(0).getName());
+        assertEquals("Folder 1", result.getCipher("c2").getFolder());
+        assertEquals(List.of("Collection 1", "Collection 2"), result.getCipher("c3").getCollections());
+
+        // Unchanged names are carried over from the previous run
+        decryptor.decrypt(syncData, userKey, organizationKeys);
+
+        assertEquals(4, decryptionCount.get());
+    }
+
+    @Test
+    public void testReusedCiphersAreInvalidated() throws Exception {
+        EncryptionKey userKey = new EncryptionKey(new byte[32], new byte[32]);
+        EncryptionKey organizationKey = new EncryptionKey(new byte[32], new byte[32]);
+        EncString wrappedOrganizationKey = EncString.parse("4.AQID");
+        byte[] rotatedKeyBytes = new byte[32];
+        rotatedKeyBytes[0] = 1;
+        EncryptionKey rotatedOrganizationKey = new EncryptionKey(rotatedKeyBytes, rotatedKeyBytes);
+        EncString wrappedRotatedOrganizationKey = EncString.parse("4.BAUG");
+        Map<EncString, EncryptionKey> keyCache = new HashMap<>();
+        keyCache.put(wrappedOrganizationKey, organizationKey);
+        keyCache.put(wrappedRotatedOrganizationKey, rotatedOrganizationKey);
+        OrganizationKeys organizationKeys = new OrganizationKeys(null, Map.of("org", wrappedOrganizationKey), keyCache);
+
+        OffsetDateTime revision = OffsetDateTime.parse("2026-01-01T00:00:00Z");
+        OffsetDateTime nextRevision = OffsetDateTime.parse("2026-01-02T00:00:00Z");
+        CipherData c1 = cipher(userKey, "c1", null, "f1", List.of(), revision);
+        CipherData c2 = cipher(userKey, "c2", null, null, List.of(), revision);
+        CipherData c3 = cipher(organizationKey, "c3", "org", null, List.of("col1"), revision);
+        Folder f1 = new Folder("f1", encrypt(userKey, "Folder 1"), revision);
+        Collection col1 = new Collection(false, false, false, "col1", "org", encrypt(organizationKey, "Collection 1"));
+
+        SyncDataDecryptor decryptor = new SyncDataDecryptor();
+        DecryptedSyncData first = decryptor.decrypt(syncData(List.of(c1, c2, c3), List.of(f1), List.of(col1)), userKey, organizationKeys);
+
+        // Nothing changed
+        DecryptedSyncData second = decryptor.decrypt(syncData(List.of(c1, c2, c3), List.of(f1), List.of(col1)), userKey, organizationKeys);
+        assertSame(first.getCipher("c1"), second.getCipher("c1"));
+        assertSame(first.getCipher("c2"), second.getCipher("c2"));
+        assertSame(first.getCipher("c3"), second.getCipher("c3"));
+
+        // Revision date of the cipher changed
+        CipherData c2Updated = new CipherData("c2", encrypt(userKey, "Cipher c2 updated"), null, null, null, null, null, null, null, null, List.of(), nextRevision, revision, null, null, null);
+        DecryptedSyncData third = decryptor.decrypt(syncData(List.of(c1, c2Updated, c3), List.of(f1), List.of(col1)), userKey, organizationKeys);
+        assertSame(second.getCipher("c1"), third.getCipher("c1"));
+        assertNotSame(second.getCipher("c2"), third.getCipher("c2"));
+        assertEquals("Cipher c2 updated", third.getCipher("c2").getName());
+
+        // Folder renamed
+        Folder f1Renamed = new Folder("f1", encrypt(userKey, "Folder 1 renamed"), nextRevision);
+        DecryptedSyncData fourth = decryptor.decrypt(syncData(List.of(c1, c2Updated, c3), List.of(f1Renamed), List.of(col1)), userKey, organizationKeys);
+        assertNotSame(third.getCipher("c1"), fourth.getCipher("c1"));
+        assertEquals("Folder 1 renamed", fourth.getCipher("c1").getFolder());
+        assertSame(third.getCipher("c3"), fourth.getCipher("c3"));
+
+        // Collection renamed
+        Collection col1Renamed = new Collection(false, false, false, "col1", "org", encrypt(organizationKey, "Collection 1 renamed"));
+        DecryptedSyncData fifth = decryptor.decrypt(syncData(List.of(c1, c2Updated, c3), List.of(f1Renamed), List.of(col1Renamed)), userKey, organizationKeys);
+        assertNotSame(fourth.getCipher("c3"), fifth.getCipher("c3"));
+        assertEquals(List.of("Collection 1 renamed"), fifth.getCipher("c3").getCollections());
+        assertSame(fourth.getCipher("c1"), fifth.getCipher("c1"));
+
+        // Organization key rotated, the revision date of the cipher is kept
+        OrganizationKeys rotatedOrganizationKeys = new OrganizationKeys(null, Map.of("org", wrappedRotatedOrganizationKey), keyCache);
+        CipherData c3Rotated = cipher(rotatedOrganizationKey, "c3", "org", null, List.of("col1"), revision);
+        Collection col1Rotated = new Collection(false, false, false, "col1", "org", encrypt(rotatedOrganizationKey, "Collection 1 renamed"));
+        DecryptedSyncData sixth = decryptor.decrypt(syncData(List.of(c1, c2Updated, c3Rotated), List.of(f1Renamed), List.of(col1Rotated)), userKey, rotatedOrganizationKeys);
+        assertNotSame(fifth.getCipher("c3"), sixth.getCipher("c3"));
+        assertEquals("Cipher c3", sixth.getCipher("c3").getName());
+        assertSame(fifth.getCipher("c1"), sixth.getCipher("c1"));
+
+        // Reset drops the remembered result
+        decryptor.reset();
+        DecryptedSyncData seventh = decryptor.decrypt(syncData(List.of(c1, c2Updated, c3Rotated), List.of(f1Renamed), List.of(col1Rotated)), userKey, rotatedOrganizationKeys);
+        assertNotSame(sixth.getCipher("c1"), seventh.getCipher("c1"));
+        assertNotSame(sixth.getCipher("c2"), seventh.getCipher("c2"));
+        assertNotSame(sixth.getCipher("c3"), seventh.getCipher("c3"));
+    }
+
+    @Test
+    public void testUnsupportedEncStringOnlyAffectsItsCipher() throws Exception {
+        EncryptionKey userKey = new EncryptionKey(new byte[32], new byte[32]);
+        String json = """
+                {
+                  "profile": {"id": "user", "email": "dummy@example.com", "organizations": []},
+                  "ciphers": [
+                    {"id": "c1", "name": "%s", "revisionDate": "2026-01-01T00:00:00Z"},
+                    {"id": "c2", "name": "7.AAAA|AQID", "revisionDate": "2026-01-01T00:00:00Z"}
+                  ],
+                  "folders": [],
+                  "collections": []
+                }
+                """.formatted(UtilCryto.encryptString(userKey, "Cipher c1"));
+        SyncData syncData = new ObjectMapper().findAndRegisterModules().readValue(json, SyncData.class);
+
+        DecryptedSyncData result = new SyncDataDecryptor().decrypt(syncData, userKey, new OrganizationKeys(null, Map.of(), new HashMap<>()));
+
+        assertEquals("Cipher c1", result.getCipher("c1").getName());
+        assertNull(result.getCipher("c2"));
+    }
+
+    private static SyncData syncData(List<CipherData> ciphers, List<Folder> folders, List<Collection> collections) {
+        return new SyncData(
+                new ProfileData("user", "dummy@example.com", "Dummy", null, null, List.of(new OrganzationData("org", EncString.parse("4.AQID"), "Organization"))),
+                ciphers,
+                folders,
+                collections,
+                null
+        );
+    }
+
+    private static CipherData cipher(EncryptionKey key, String id, String organizationId, String folderId, List<String> collectionIds, OffsetDateTime revision) throws Exception {
+        return new CipherData(id, encrypt(key, "Cipher " + id), organizationId, null, null, null, null, null, null, folderId, collectionIds, revision, revision, null, null, null);
+    }
+
+    private static EncString encrypt(EncryptionKey key, String value) throws Exception {
+        return EncString.parse(UtilCryto.encryptString(key, value));
+    }
+}
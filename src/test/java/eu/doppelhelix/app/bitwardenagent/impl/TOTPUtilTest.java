@@ -0,0 +1,81 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TOTPUtilTest {
+
+    private static final String SHA1_SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+    private static final String SHA256_SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZA";
+    private static final String SHA512_SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQGEZDGNA";
+
+    // Test vectors from RFC 6238, Appendix B
+    @ParameterizedTest
+    @CsvSource({
+        "SHA1, " + SHA1_SECRET + ", 59, 94287082",
+        "SHA256, " + SHA256_SECRET + ", 59, 46119246",
+        "SHA512, " + SHA512_SECRET + ", 59, 90693936",
+        "SHA1, " + SHA1_SECRET + ", 1111111109, 07081804",
+        "SHA256, " + SHA256_SECRET + ", 1111111109, 68084774",
+        "SHA512, " + SHA512_SECRET + ", 1111111109, 25091201",
+        "SHA1, " + SHA1_SECRET + ", 20000000000, 65353130",
+    })
+    public void testCalculateTOTP(String algorithm, String secret, long time, String expected) {
+        String url = "otpauth://totp/Test:dummy@example.com?secret=" + secret + "&algorithm=" + algorithm + "&digits=8&period=30";
+        assertEquals(expected, TOTPUtil.calculateTOTP(url, time * 1000));
+    }
+
+    @Test
+    public void testPlainSecret() {
+        assertEquals("287082", TOTPUtil.calculateTOTP(SHA1_SECRET.toLowerCase(), 59_000));
+    }
+
+    @Test
+    public void testGeneratorKeepsTokenWithinPeriod() {
+        TOTPUtil.TOTPGenerator generator = TOTPUtil.createGenerator(SHA1_SECRET);
+
+        TOTPUtil.TOTPToken token = generator.token(30_000);
+        assertSame(token, generator.token(59_999));
+        assertEquals(60_000, token.validUntil());
+        assertEquals("287082", token.value());
+        assertNotSame(token, generator.token(60_000));
+    }
+
+    @Test
+    public void testLoginTokenFollowsTotp() {
+        DecryptedLoginData login = new DecryptedLoginData();
+        login.setTotp(SHA1_SECRET);
+        assertEquals(6, login.getTotpToken().value().length());
+
+        login.setTotp("otpauth://totp/Test?secret=" + SHA1_SECRET + "&digits=8");
+        assertEquals(8, login.getTotpToken().value().length());
+    }
+
+    @Test
+    public void testInvalidInput() {
+        assertThrows(TOTPUtil.TOTPCalculationFailedException.class, () -> TOTPUtil.calculateTOTP(null));
+        assertThrows(TOTPUtil.TOTPCalculationFailedException.class, () -> TOTPUtil.calculateTOTP("otpauth://totp/Test?secret=" + SHA1_SECRET + "&algorithm=MD5"));
+        assertThrows(TOTPUtil.TOTPCalculationFailedException.class, () -> TOTPUtil.calculateTOTP("not base32!"));
+    }
+}
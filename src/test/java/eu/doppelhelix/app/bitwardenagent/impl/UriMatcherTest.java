@@ -0,0 +1,145 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.impl;
+
+import eu.doppelhelix.app.bitwardenagent.http.DomainsData;
+import eu.doppelhelix.app.bitwardenagent.http.GlobalEquivalentDomain;
+import eu.doppelhelix.app.bitwardenagent.http.UriMatchType;
+import java.time.OffsetDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class UriMatcherTest {
+
+    @Test
+    public void testFindMatches() {
+        DecryptedCipherData standard = login("standard", "https://accounts.example.com/login", null);
+        DecryptedCipherData host = login("host", "https://mail.example.com:8443", UriMatchType.HOST);
+        DecryptedCipherData startsWith = login("startsWith", "https://example.com/app/", UriMatchType.STARTS_WITH);
+        DecryptedCipherData exact = login("exact", "https://example.com/app/login", UriMatchType.EXACT);
+        DecryptedCipherData regexp = login("regexp", "^https://[a-z]+\\.example\\.org/", UriMatchType.REGEXP);
+        DecryptedCipherData never = login("never", "https://example.com", UriMatchType.NEVER);
+        DecryptedCipherData countryCode = login("countryCode", "shop.example.co.uk", UriMatchType.BASE_DOMAIN);
+        DecryptedCipherData deleted = login("deleted", "https://example.com", UriMatchType.BASE_DOMAIN);
+        deleted.setDeletedDate(OffsetDateTime.now());
+
+        UriMatcher matcher = new UriMatcher(List.of(standard, host, startsWith, exact, regexp, never, countryCode, deleted));
+
+        assertEquals(List.of(standard, startsWith, exact), matcher.findMatches("https://example.com/app/login"));
+        assertEquals(List.of(standard, startsWith), matcher.findMatches("https://example.com/app/other"));
+        assertEquals(List.of(standard, host), matcher.findMatches("https://MAIL.example.com:8443/inbox"));
+        assertEquals(List.of(standard), matcher.findMatches("https://mail.example.com/inbox"));
+        assertEquals(List.of(regexp), matcher.findMatches("https://www.example.org/"));
+        assertEquals(List.of(countryCode), matcher.findMatches("https://example.co.uk"));
+        assertEquals(List.of(), matcher.findMatches("https://other.co.uk"));
+        assertEquals(List.of(), matcher.findMatches("https://example.net"));
+    }
+
+    @Test
+    public void testEquivalentDomains() {
+        DecryptedCipherData google = login("google", "https://accounts.google.com", null);
+        DecryptedCipherData exact = login("exact", "https://google.com", UriMatchType.EXACT);
+        EquivalentDomains equivalentDomains = EquivalentDomains.of(new DomainsData(
+                List.of(List.of("google.com", "youtube.com")),
+                List.of(
+                        new GlobalEquivalentDomain(1, List.of("google.com", "google.de"), false),
+                        new GlobalEquivalentDomain(2, List.of("google.com", "google.fr"), true)
+                )));
+
+        UriMatcher matcher = new UriMatcher(List.of(google, exact), equivalentDomains);
+
+        assertEquals(List.of(google), matcher.findMatches("https://www.youtube.com"));
+        assertEquals(List.of(google), matcher.findMatches("https://google.de"));
+        assertEquals(List.of(), matcher.findMatches("https://google.fr"));
+        assertEquals(List.of(google, exact), matcher.findMatches("https://google.com"));
+    }
+
+    @Test
+    public void testOverlappingEquivalentDomains() {
+        DecryptedCipherData x = login("x", "https://x.com", null);
+        DecryptedCipherData c = login("c", "https://c.com", null);
+        EquivalentDomains equivalentDomains = EquivalentDomains.of(new DomainsData(
+                List.of(List.of("x.com", "a.com")),
+                List.of(
+                        new GlobalEquivalentDomain(1, List.of("a.com", "c.com"), false),
+                        new GlobalEquivalentDomain(2, List.of("d.com", "c.com"), false)
+                )));
+
+        UriMatcher matcher = new UriMatcher(List.of(x, c), equivalentDomains);
+
+        assertEquals(equivalentDomains.groupOf("x.com"), equivalentDomains.groupOf("c.com"));
+        assertEquals(equivalentDomains.groupOf("x.com"), equivalentDomains.groupOf("d.com"));
+        assertEquals(List.of(x, c), matcher.findMatches("https://www.a.com"));
+        assertEquals(List.of(x, c), matcher.findMatches("https://c.com"));
+        assertEquals(List.of(x, c), matcher.findMatches("https://d.com"));
+        assertEquals(List.of(), matcher.findMatches("https://e.com"));
+    }
+
+    @Test
+    public void testBaseDomain() {
+        assertEquals("example.com", UriMatcher.baseDomain("a.b.example.com"));
+        assertEquals("example.co.uk", UriMatcher.baseDomain("www.example.co.uk"));
+        assertEquals("localhost", UriMatcher.baseDomain("localhost"));
+        assertEquals("192.168.1.1", UriMatcher.baseDomain("192.168.1.1"));
+        // Private section of the public suffix list
+        assertEquals("alice.github.io", UriMatcher.baseDomain("www.alice.github.io"));
+        assertEquals("github.io", UriMatcher.baseDomain("github.io"));
+        assertEquals("bob.blogspot.com", UriMatcher.baseDomain("bob.blogspot.com"));
+        // Wildcard and exception rules
+        assertEquals("example.foo.ck", UriMatcher.baseDomain("a.example.foo.ck"));
+        assertEquals("www.ck", UriMatcher.baseDomain("a.www.ck"));
+    }
+
+    @Test
+    public void testSharedHostingTenantsAreDifferentSites() {
+        DecryptedCipherData alice = login("alice", "https://alice.github.io", null);
+
+        UriMatcher matcher = new UriMatcher(List.of(alice));
+
+        assertEquals(List.of(alice), matcher.findMatches("https://alice.github.io/project"));
+        assertEquals(List.of(), matcher.findMatches("https://mallory.github.io"));
+    }
+
+    @Test
+    public void testStartsWithMatches() {
+        DecryptedCipherData root = login("root", "https://example.com/", UriMatchType.STARTS_WITH);
+        DecryptedCipherData app = login("app", "https://example.com/app/", UriMatchType.STARTS_WITH);
+        DecryptedCipherData apple = login("apple", "https://example.com/apple", UriMatchType.STARTS_WITH);
+        DecryptedCipherData appAdmin = login("appAdmin", "https://example.com/app/admin", UriMatchType.STARTS_WITH);
+        DecryptedCipherData noHost = login("noHost", "file:///home/", UriMatchType.STARTS_WITH);
+
+        UriMatcher matcher = new UriMatcher(List.of(root, app, apple, appAdmin, noHost));
+
+        assertEquals(List.of(root, app, appAdmin), matcher.findMatches("https://example.com/app/admin/users"));
+        assertEquals(List.of(root, app), matcher.findMatches("https://example.com/app/b"));
+        assertEquals(List.of(root, apple), matcher.findMatches("https://example.com/apples"));
+        assertEquals(List.of(root), matcher.findMatches("https://example.com/ap"));
+        assertEquals(List.of(), matcher.findMatches("https://example.co"));
+        assertEquals(List.of(noHost), matcher.findMatches("file:///home/user"));
+    }
+
+    private static DecryptedCipherData login(String id, String uri, UriMatchType match) {
+        DecryptedLoginData login = new DecryptedLoginData();
+        login.getUriData().add(new DecryptedUriData(uri, null, match));
+        DecryptedCipherData dcd = new DecryptedCipherData();
+        dcd.setId(id);
+        dcd.setName(id);
+        dcd.setLogin(login);
+        return dcd;
+    }
+}
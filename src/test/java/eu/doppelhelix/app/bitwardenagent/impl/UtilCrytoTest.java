@@ -15,14 +15,20 @@
  */
 package eu.doppelhelix.app.bitwardenagent.impl;
 
+import eu.doppelhelix.app.bitwardenagent.http.EncString;
 import eu.doppelhelix.app.bitwardenagent.http.PreloginResult;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 import static eu.doppelhelix.app.bitwardenagent.impl.UtilCryto.encryptionKeyFromMasterKey;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class UtilCrytoTest {
@@ -54,6 +60,24 @@ public class UtilCrytoTest {
         assertArrayEquals(input, decrypted);
     }
 
+    @Test
+    public void testBatchDecryption() throws Exception {
+        EncryptionKey ek = new EncryptionKey(new byte[32], new byte[32]);
+        EncString value1 = EncString.parse(UtilCryto.encryptString(ek, "Value 1"));
+        EncString value2 = EncString.parse(UtilCryto.encryptString(ek, "Value 2"));
+        EncString tampered = new EncString(value1.encryptionType(), value1.iv(), value2.data(), value1.mac());
+
+        List<DecryptionResult> results = UtilCryto.decryptStrings(ek, Arrays.asList(value1, null, tampered, value2));
+
+        assertEquals(4, results.size());
+        assertEquals("Value 1", results.get(0).getOrThrow());
+        assertTrue(results.get(1).isSuccess());
+        assertNull(results.get(1).value());
+        assertFalse(results.get(2).isSuccess());
+        assertThrows(IllegalStateException.class, () -> results.get(2).getOrThrow());
+        assertEquals("Value 2", results.get(3).getOrThrow());
+    }
+
     @Test
     public void testCreateCodeChallenge() {
         String verifier = "AQYWOssOrNQ4hIMoC8fZD2JJwFsFDs66dGGZjYyr7TmF9fK8ynOM3N930b7zT0qI";
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptedCipherData;
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptedFieldData;
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptedLoginData;
+import eu.doppelhelix.app.bitwardenagent.impl.DecryptedSyncData;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompiledQueryTest {
+
+    @Test
+    public void testCompiledAccessors() {
+        DecryptedCipherData dcd = new DecryptedCipherData();
+        DecryptedLoginData dld = new DecryptedLoginData();
+        dld.setUsername("user");
+        dcd.setLogin(dld);
+        dcd.setNotes("notes");
+        dcd.getFields().add(field("first", "value 1"));
+        dcd.getFields().add(field("1", "value 2"));
+        dcd.getFields().add(field("first", "shadowed"));
+
+        assertEquals("id", CompiledQuery.compile("id/login/username").entryId());
+        assertEquals("user", CompiledQuery.compile("id/login/username").apply(dcd));
+        assertEquals("notes", CompiledQuery.compile("id/notes").apply(dcd));
+        assertEquals("value 1", CompiledQuery.compile("id/fields/first/value").apply(dcd));
+        // Names take precedence over indices
+        assertEquals("value 2", CompiledQuery.compile("id/fields/1/value").apply(dcd));
+        assertEquals("value 1", CompiledQuery.compile("id/fields/0/value").apply(dcd));
+        assertEquals("", CompiledQuery.compile("id/fields/missing/value").apply(dcd));
+        assertEquals("", CompiledQuery.compile("id/login/unknown").apply(dcd));
+        assertNull(CompiledQuery.compile("invalid"));
+    }
+
+    @Test
+    public void testSelectors() {
+        DecryptedCipherData dcd = new DecryptedCipherData();
+        DecryptedSyncData syncData = Mockito.mock(DecryptedSyncData.class);
+        Mockito.when(syncData.getCiphersByName("Mail+Server")).thenReturn(List.of(dcd));
+        Mockito.when(syncData.getCiphersByFolderAndName("Work/Servers", "db/1")).thenReturn(List.of(dcd));
+        Mockito.when(syncData.getCiphersByFolderAndName(null, "db")).thenReturn(List.of(dcd));
+        Mockito.when(syncData.getCiphersByUsername("admin")).thenReturn(List.of(dcd));
+
+        CompiledQuery byName = CompiledQuery.compile("name:Mail+Server/login/password");
+        assertNull(byName.entryId());
+        assertEquals(List.of(dcd), byName.resolve(syncData));
+        assertEquals(List.of(dcd), CompiledQuery.compile("folder:Work/Servers/db%2F1/fields/0/value").resolve(syncData));
+        assertEquals(List.of(dcd), CompiledQuery.compile("folder:db/notes").resolve(syncData));
+        assertEquals(List.of(dcd), CompiledQuery.compile("username:admin/login/username").resolve(syncData));
+        // Names with slashes have to be encoded
+        assertNull(CompiledQuery.compile("name:a/b/login/password"));
+        assertNull(CompiledQuery.compile("name:entry"));
+    }
+
+    @Test
+    public void testTotpTokenValidity() throws InterruptedException {
+        DecryptedCipherData dcd = new DecryptedCipherData();
+        DecryptedLoginData dld = new DecryptedLoginData();
+        dld.setTotp("otpauth://totp/Test?secret=GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ&period=2");
+        dcd.setLogin(dld);
+
+        CompiledQuery query = CompiledQuery.compile("id/login/totpTokenValidity");
+        assertEquals(0, query.delay(dcd));
+        String[] result = query.apply(dcd).split("\n");
+        assertEquals(2, result.length);
+        assertEquals(6, result[0].length());
+        // Requesting the full period is delayed until the start of the next
+        // period
+        query = CompiledQuery.compile("id/login/totpTokenValidity/2");
+        long delay = query.delay(dcd);
+        assertTrue(delay <= 2000);
+        Thread.sleep(delay);
+        result = query.apply(dcd).split("\n");
+        assertEquals("2", result[1]);
+        // Longer than the period is clamped to the period, so it yields a
+        // fresh token instead of one that can not meet the request
+        query = CompiledQuery.compile("id/login/totpTokenValidity/45");
+        Thread.sleep(query.delay(dcd));
+        result = query.apply(dcd).split("\n");
+        assertEquals("2", result[1]);
+        assertEquals("", CompiledQuery.compile("id/login/totpTokenValidity/x").apply(dcd));
+    }
+
+    private static DecryptedFieldData field(String name, String value) {
+        DecryptedFieldData dfd = new DecryptedFieldData();
+        dfd.setName(name);
+        dfd.setValue(value);
+        return dfd;
+    }
+}
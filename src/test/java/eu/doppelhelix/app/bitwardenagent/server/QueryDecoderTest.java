@@ -0,0 +1,79 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QueryDecoderTest {
+
+    @Test
+    public void testBinaryProtocol() throws ProtocolException {
+        String longQuery = "id/fields/" + "x".repeat(10000) + "/value";
+        ByteBuffer request = ByteBuffer.allocate(20000);
+        request.put(QueryDecoder.BINARY_MAGIC);
+        request.put(QueryDecoder.BINARY_VERSION_1);
+        request.putInt(longQuery.length());
+        request.put(longQuery.getBytes(UTF_8));
+        request.putInt(7);
+        request.put("id/note".getBytes(UTF_8));
+        request.flip();
+
+        QueryDecoder decoder = new QueryDecoder();
+        // Feed the request in small pieces, the decoder has to reassemble them
+        List<String> queries = new ArrayList<>();
+        while (request.hasRemaining()) {
+            ByteBuffer piece = request.slice(request.position(), Math.min(1000, request.remaining()));
+            request.position(request.position() + piece.remaining());
+            decoder.append(piece);
+            String query;
+            while ((query = decoder.nextQuery()) != null) {
+                queries.add(query);
+            }
+        }
+        assertEquals(List.of(longQuery, "id/note"), queries);
+        assertTrue(decoder.isIdle());
+        assertNull(decoder.nextQuery());
+
+        String value = "ä🔑-".repeat(5000);
+        List<ByteBuffer> chunks = new ArrayList<>();
+        decoder.encode(value, chunks::add);
+        assertTrue(chunks.size() > 1);
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        for (ByteBuffer chunk : chunks) {
+            byte[] data = new byte[chunk.remaining()];
+            chunk.get(data);
+            response.writeBytes(data);
+            BufferPool.release(chunk);
+        }
+        ByteBuffer responseBuffer = ByteBuffer.wrap(response.toByteArray());
+        byte[] expected = value.getBytes(UTF_8);
+        assertEquals(expected.length, responseBuffer.getInt());
+        byte[] actual = new byte[responseBuffer.remaining()];
+        responseBuffer.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+}
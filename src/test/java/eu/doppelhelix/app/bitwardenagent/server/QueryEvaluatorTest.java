@@ -0,0 +1,81 @@
+/*
+ * Copyright 2026 matthias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.doppelhelix.app.bitwardenagent.server;
+
+import eu.doppelhelix.app.bitwardenagent.impl.BitwardenClient;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class QueryEvaluatorTest {
+
+    @Test
+    public void testBatchQuery() {
+        QueryEvaluator queryEvaluator = new QueryEvaluator(Mockito.mock(BitwardenClient.class));
+
+        assertEquals(
+                "{\"id1/login/username\":\"\",\"id1/login/password\":\"\",\"invalid\":\"\"}",
+                queryEvaluator.evaluate("[\"id1/login/username\", \"id1/login/password\", \"invalid\"]\n"));
+        assertEquals("", queryEvaluator.evaluate("[\"unterminated"));
+    }
+
+    @Test
+    public void testConditionalQuery() {
+        BitwardenClient bitwardenClient = Mockito.mock(BitwardenClient.class);
+        QueryEvaluator queryEvaluator = new QueryEvaluator(bitwardenClient);
+        Mockito.when(bitwardenClient.getSyncGeneration()).thenReturn(3L);
+        long generation = Long.parseLong(queryEvaluator.evaluate("!generation"));
+
+        assertEquals("!unchanged", queryEvaluator.evaluate("!if-changed " + generation + " id1/login/password"));
+        Mockito.verify(bitwardenClient, Mockito.never()).getSyncData();
+
+        Mockito.when(bitwardenClient.getSyncGeneration()).thenReturn(4L);
+
+        assertEquals((generation + 1) + "\n", queryEvaluator.evaluate("!if-changed " + generation + " id1/login/password"));
+        assertEquals("", queryEvaluator.evaluate("!if-changed abc id1/login/password"));
+    }
+
+    @Test
+    public void testConditionalQueryAfterRestart() {
+        BitwardenClient bitwardenClient = Mockito.mock(BitwardenClient.class);
+        Mockito.when(bitwardenClient.getSyncGeneration()).thenReturn(3L);
+        long startTime = System.currentTimeMillis();
+        QueryEvaluator beforeRestart = new QueryEvaluator(bitwardenClient, startTime << 20);
+        long generation = Long.parseLong(beforeRestart.evaluate("!generation"));
+
+        // The new process reaches the same counter values
+        QueryEvaluator afterRestart = new QueryEvaluator(bitwardenClient, (startTime + 1) << 20);
+
+        assertNotEquals("!unchanged", afterRestart.evaluate("!if-changed " + generation + " id1/login/password"));
+        assertEquals("!unchanged", afterRestart.evaluate("!if-changed " + afterRestart.evaluate("!generation") + " id1/login/password"));
+    }
+
+    @Test
+    public void testConditionalQueryForTotpToken() {
+        BitwardenClient bitwardenClient = Mockito.mock(BitwardenClient.class);
+        QueryEvaluator queryEvaluator = new QueryEvaluator(bitwardenClient);
+        String generation = queryEvaluator.evaluate("!generation");
+
+        // TOTP tokens change without a change of the generation
+        assertEquals(generation + "\n", queryEvaluator.evaluate("!if-changed " + generation + " id1/login/totpToken"));
+        assertEquals(generation + "\n", queryEvaluator.evaluate("!if-changed " + generation + " id1/login/totpTokenValidity/10"));
+        assertEquals(generation + "\n{\"id1/login/username\":\"\",\"id1/login/totpTokenValidity\":\"\"}",
+                queryEvaluator.evaluate("!if-changed " + generation + " [\"id1/login/username\", \"id1/login/totpTokenValidity\"]"));
+        assertEquals("!unchanged", queryEvaluator.evaluate("!if-changed " + generation + " id1/login/totp"));
+    }
+}
@@ -16,31 +16,42 @@
 package eu.doppelhelix.app.bitwardenagent.server;
 
 import eu.doppelhelix.app.bitwardenagent.impl.BitwardenClient;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
-import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mockito;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
 public class UnixDomainSocketServerTest {
 
     public UnixDomainSocketServerTest() {
     }
 
-    @Test
-    public void assertShutdownBlocksUntilDone() throws IOException {
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void assertShutdownBlocksUntilDone(boolean selector) throws IOException {
         Path socketDirectory = Path.of("target/test/sockets");
         recursiveDelete(socketDirectory);
         Files.createDirectories(socketDirectory);
 
         BitwardenClient bitwardenClient = Mockito.mock(BitwardenClient.class);
 
-        UnixDomainSocketServer server = new UnixDomainSocketServer(bitwardenClient, socketDirectory);
+        AbstractSocketServer server = createServer(selector, bitwardenClient, socketDirectory);
 
         server.start();
         server.shutdown();
@@ -48,6 +59,176 @@ public class UnixDomainSocketServerTest {
         assertFalse(server.isAlive(), "Thread still alive: " + server);
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void assertPipelinedQueriesAreAnsweredInOrder(boolean selector) throws IOException, InterruptedException {
+        Path socketDirectory = Path.of("target/test/sockets-pipeline");
+        recursiveDelete(socketDirectory);
+        Files.createDirectories(socketDirectory);
+
+        BitwardenClient bitwardenClient = Mockito.mock(BitwardenClient.class);
+
+        AbstractSocketServer server = createServer(selector, bitwardenClient, socketDirectory);
+        server.start();
+        try {
+            Path socketPath = socketDirectory.resolve("socket");
+            for (int i = 0; i < 50 && !Files.exists(socketPath); i++) {
+                Thread.sleep(100);
+            }
+            try (SocketChannel sc = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+                // Access to unknown entries is denied, so each query is
+                // answered with an empty frame
+                sc.write(ByteBuffer.wrap("!pipeline\nid1/login/username\n\nid2/login/password\nid3/notes\n".getBytes(UTF_8)));
+                sc.shutdownOutput();
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+                while (sc.read(readBuffer) > 0) {
+                    readBuffer.flip();
+                    baos.write(readBuffer.array(), readBuffer.position(), readBuffer.limit());
+                    readBuffer.clear();
+                }
+                assertEquals("0\n0\n0\n", baos.toString(UTF_8));
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void assertConnectionsAboveLimitAreRejectedAsBusy(boolean selector) throws IOException, InterruptedException {
+        Path socketDirectory = Path.of("target/test/sockets-limit");
+        recursiveDelete(socketDirectory);
+        Files.createDirectories(socketDirectory);
+
+        AbstractSocketServer server = createServer(selector, Mockito.mock(BitwardenClient.class), socketDirectory);
+        server.setLimits(1, 10000, 10000);
+        server.start();
+        try {
+            Path socketPath = awaitSocket(socketDirectory);
+            try (SocketChannel first = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+                    SocketChannel second = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+                first.write(ByteBuffer.wrap("!pipeline\n".getBytes(UTF_8)));
+                assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                    assertEquals(AbstractSocketServer.BUSY_RESPONSE, readAll(second));
+                });
+                // The first connection keeps working
+                first.write(ByteBuffer.wrap("id1/login/username\n".getBytes(UTF_8)));
+                first.shutdownOutput();
+                assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                    assertEquals("0\n", readAll(first));
+                });
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void assertIncompleteQueryIsClosedAfterReadTimeout(boolean selector) throws IOException, InterruptedException {
+        Path socketDirectory = Path.of("target/test/sockets-read-timeout");
+        recursiveDelete(socketDirectory);
+        Files.createDirectories(socketDirectory);
+
+        AbstractSocketServer server = createServer(selector, Mockito.mock(BitwardenClient.class), socketDirectory);
+        server.setLimits(10, 200, 60000);
+        server.start();
+        try {
+            Path socketPath = awaitSocket(socketDirectory);
+            try (SocketChannel sc = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+                // Half of a pipelined query, the output is not shut down
+                sc.write(ByteBuffer.wrap("!pipeline\nid1/login".getBytes(UTF_8)));
+                assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                    assertEquals("", readAll(sc));
+                });
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void assertIdlePipelineIsClosedAfterIdleTimeout(boolean selector) throws IOException, InterruptedException {
+        Path socketDirectory = Path.of("target/test/sockets-idle-timeout");
+        recursiveDelete(socketDirectory);
+        Files.createDirectories(socketDirectory);
+
+        AbstractSocketServer server = createServer(selector, Mockito.mock(BitwardenClient.class), socketDirectory);
+        server.setLimits(10, 60000, 200);
+        server.start();
+        try {
+            Path socketPath = awaitSocket(socketDirectory);
+            try (SocketChannel sc = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+                sc.write(ByteBuffer.wrap("!pipeline\nid1/login/username\n".getBytes(UTF_8)));
+                assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                    assertEquals("0\n", readAll(sc));
+                });
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void assertUnreadResponsesAreClosedAfterReadTimeout(boolean selector) throws IOException, InterruptedException {
+        Path socketDirectory = Path.of("target/test/sockets-write-timeout");
+        recursiveDelete(socketDirectory);
+        Files.createDirectories(socketDirectory);
+
+        AbstractSocketServer server = createServer(selector, Mockito.mock(BitwardenClient.class), socketDirectory);
+        server.setLimits(10, 200, 60000);
+        server.start();
+        try {
+            Path socketPath = awaitSocket(socketDirectory);
+            try (SocketChannel sc = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+                sc.configureBlocking(false);
+                sc.write(ByteBuffer.wrap("!pipeline\n".getBytes(UTF_8)));
+                byte[] queries = "id1/login/username\n".repeat(1000).getBytes(UTF_8);
+                // The responses are never read, so the server stops writing
+                // and then reading, until it gives up on the connection
+                assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                    assertThrows(IOException.class, () -> {
+                        while (true) {
+                            if (sc.write(ByteBuffer.wrap(queries)) == 0) {
+                                Thread.sleep(10);
+                            }
+                        }
+                    });
+                });
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static Path awaitSocket(Path socketDirectory) throws InterruptedException {
+        Path socketPath = socketDirectory.resolve("socket");
+        for (int i = 0; i < 50 && !Files.exists(socketPath); i++) {
+            Thread.sleep(100);
+        }
+        return socketPath;
+    }
+
+    private static String readAll(SocketChannel sc) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+        while (sc.read(readBuffer) > 0) {
+            readBuffer.flip();
+            baos.write(readBuffer.array(), readBuffer.position(), readBuffer.limit());
+            readBuffer.clear();
+        }
+        return baos.toString(UTF_8);
+    }
+
+    private static AbstractSocketServer createServer(boolean selector, BitwardenClient bitwardenClient, Path socketDirectory) {
+        return selector
+                ? new SelectorSocketServer(bitwardenClient, socketDirectory)
+                : new UnixDomainSocketServer(bitwardenClient, socketDirectory);
+    }
+
     private static void recursiveDelete(Path basePath) throws IOException {
         if(basePath == null || ! Files.exists(basePath)) {
             return;